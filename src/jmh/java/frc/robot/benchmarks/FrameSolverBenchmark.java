@@ -0,0 +1,74 @@
+package frc.robot.benchmarks;
+
+import edu.wpi.first.apriltag.AprilTag;
+import edu.wpi.first.apriltag.AprilTagFieldLayout;
+import edu.wpi.first.math.geometry.Pose3d;
+import edu.wpi.first.math.geometry.Rotation3d;
+import edu.wpi.first.math.geometry.Transform3d;
+import edu.wpi.first.math.geometry.Translation3d;
+import frc.robot.vision.FieldLayout;
+import frc.robot.vision.FrameSolver;
+import frc.robot.vision.VisionPoseSample;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.photonvision.targeting.PhotonPipelineResult;
+import org.photonvision.targeting.PhotonTrackedTarget;
+import org.photonvision.targeting.TargetCorner;
+
+/** Per-frame target handling, from a PhotonVision result to a solved pose, for 1 to 16 tags. */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FrameSolverBenchmark {
+  @Param({"1", "2", "4", "8", "16"})
+  public int tagCount;
+
+  private FrameSolver m_frameSolver;
+  private PhotonPipelineResult m_result;
+  private final VisionPoseSample m_sample = new VisionPoseSample();
+
+  @Setup
+  public void setup() {
+    List<AprilTag> tags = new ArrayList<>();
+    List<PhotonTrackedTarget> targets = new ArrayList<>();
+    List<TargetCorner> corners = new ArrayList<>();
+    for (int i = 0; i < 4; i++) {
+      corners.add(new TargetCorner(100 + 20 * (i % 2), 100 + 20 * (i / 2)));
+    }
+
+    for (int id = 1; id <= tagCount; id++) {
+      double x = -2.0 + 0.25 * id;
+      tags.add(new AprilTag(id, new Pose3d(new Translation3d(x, 3.0, 1.5), new Rotation3d())));
+
+      Transform3d cameraToTarget = new Transform3d(new Translation3d(3.0, -x, 0.5), new Rotation3d(0, 0, Math.PI));
+      targets.add(
+          new PhotonTrackedTarget(
+              Math.toDegrees(Math.atan2(x, 3.0)), 5.0, 1.0, 0.0, id,
+              cameraToTarget, cameraToTarget, 0.05, corners, corners));
+    }
+
+    m_frameSolver = new FrameSolver(new FieldLayout(new AprilTagFieldLayout(tags, 16.54, 8.02)));
+    m_result = new PhotonPipelineResult(20.0, targets);
+  }
+
+  @Benchmark
+  public VisionPoseSample solveFrame() {
+    m_frameSolver.solve(m_result, m_sample);
+    return m_sample;
+  }
+}
@@ -0,0 +1,113 @@
+package frc.robot.benchmarks;
+
+import edu.wpi.first.math.geometry.Transform2d;
+import edu.wpi.first.math.geometry.Translation2d;
+import frc.robot.CC4HTriangulationImplementation;
+import frc.robot.vision.RansacPoseEstimator;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Cost of the triangulation solvers on their own, without any PhotonVision types involved. */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TriangulationBenchmark {
+  @Param({"2", "4", "8", "16"})
+  public int tagCount;
+
+  private final double[] m_absoluteX = new double[16];
+  private final double[] m_absoluteY = new double[16];
+  private final double[] m_localX = new double[16];
+  private final double[] m_localY = new double[16];
+  private final double[] m_distance = new double[16];
+  private final double[] m_angle = new double[16];
+  private final double[] m_angleDegrees = new double[16];
+  private final double[] m_sin = new double[16];
+  private final double[] m_cos = new double[16];
+  private final double[] m_ambiguity = new double[16];
+  private final RansacPoseEstimator m_ransac = new RansacPoseEstimator(500, 0.25);
+  private final CC4HTriangulationImplementation.CC4HTriangulationResult m_result =
+      new CC4HTriangulationImplementation.CC4HTriangulationResult();
+
+  @Setup
+  public void setup() {
+    // Tags spread along a wall 3 m ahead of a robot at (0.2, -0.4), turned 0.3 rad
+    double robotX = 0.2;
+    double robotY = -0.4;
+    double theta = 0.3;
+    for (int i = 0; i < m_absoluteX.length; i++) {
+      m_absoluteX[i] = -2.0 + 0.25 * i;
+      m_absoluteY[i] = 3.0;
+      double dx = m_absoluteX[i] - robotX;
+      double dy = m_absoluteY[i] - robotY;
+      m_distance[i] = Math.hypot(dx, dy);
+      m_angle[i] = Math.atan2(dx, dy) - theta;
+      m_angleDegrees[i] = Math.toDegrees(m_angle[i]);
+      m_sin[i] = Math.sin(m_angle[i]);
+      m_cos[i] = Math.cos(m_angle[i]);
+      CC4HTriangulationImplementation.polarToLocal(m_distance[i], m_angle[i], m_localX, m_localY, i);
+      m_ambiguity[i] = 0.1;
+    }
+
+    // One misdetected tag for the outlier rejection to throw out
+    m_localX[2] += 1.0;
+  }
+
+  /** The original object API, allocating its inputs every call like robotPeriodic used to. */
+  @Benchmark
+  public Transform2d objectApi() {
+    CC4HTriangulationImplementation triangulation = new CC4HTriangulationImplementation();
+    CC4HTriangulationImplementation.TriangulationInputInfo first =
+        triangulation.NastyInputInfoCavemanBrainedHack(
+            new Translation2d(m_absoluteX[0], m_absoluteY[0]), m_distance[0], m_angleDegrees[0]);
+    CC4HTriangulationImplementation.TriangulationInputInfo second =
+        triangulation.NastyInputInfoCavemanBrainedHack(
+            new Translation2d(m_absoluteX[1], m_absoluteY[1]), m_distance[1], m_angleDegrees[1]);
+    return triangulation.calculateTriangulationVector(first, second);
+  }
+
+  @Benchmark
+  public CC4HTriangulationImplementation.CC4HTriangulationResult solveTwoTag() {
+    CC4HTriangulationImplementation.solveTwoTag(
+        m_absoluteX[0], m_absoluteY[0], m_distance[0], m_angle[0],
+        m_absoluteX[1], m_absoluteY[1], m_distance[1], m_angle[1],
+        m_result);
+    return m_result;
+  }
+
+  /** solveTwoTag with the sines and cosines already worked out at ingestion, as FrameSolver does. */
+  @Benchmark
+  public CC4HTriangulationImplementation.CC4HTriangulationResult solveTwoTagPrecomputed() {
+    CC4HTriangulationImplementation.solveTwoTag(
+        m_absoluteX[0], m_absoluteY[0], m_distance[0], m_sin[0], m_cos[0],
+        m_absoluteX[1], m_absoluteY[1], m_distance[1], m_sin[1], m_cos[1],
+        m_result);
+    return m_result;
+  }
+
+  @Benchmark
+  public CC4HTriangulationImplementation.CC4HTriangulationResult solveLeastSquares() {
+    CC4HTriangulationImplementation.solveLeastSquares(
+        m_absoluteX, m_absoluteY, m_localX, m_localY, tagCount, m_result);
+    return m_result;
+  }
+
+  @Benchmark
+  public CC4HTriangulationImplementation.CC4HTriangulationResult ransac() {
+    m_ransac.estimate(m_absoluteX, m_absoluteY, m_localX, m_localY, m_ambiguity, tagCount, m_result);
+    return m_result;
+  }
+}
@@ -7,7 +7,7 @@ import edu.wpi.first.math.geometry.*;
 public class CC4HTriangulationImplementation {
     public class CC4HInternalPolarVector {
         public double r;
-        public double theta; //if theta is the angle from the forward vector the calculations become easier, we use that here
+        public double theta; //if theta is the angle from the forward vector the calculations become easier, we use that here (radians)
 
         public CC4HInternalPolarVector(double radius, double angle) {
             r = radius;
@@ -42,77 +42,263 @@ public class CC4HTriangulationImplementation {
         }
     };
 
-    private class CC4HInternalVxVyInfo {
-        public CC4HInternalCartesianVector firstAprilTagLocalPosition;
-        public CC4HInternalCartesianVector firstAprilTagAbsolutePosition;
-        public CC4HInternalCartesianVector secondAprilTagLocalPosition;
-        public CC4HInternalCartesianVector secondAprilTagAbsolutePosition;
-        
-        /*
-         * Constructor for CC4HInternalVxVyInfo!
-         * 
-         * @param firstLocalPosition    The local position of the first AprilTag.
-         * @param firstAprilTagInput    Used for the absolute position of the first AprilTag.
-         * @param secondLocalPosition    The local position of the second AprilTag.
-         * @param secondAprilTagInput    Used for the absolute position of the second AprilTag.
-         */
-        public CC4HInternalVxVyInfo(CC4HInternalCartesianVector firstLocalPosition, TriangulationInputInfo firstAprilTagInput, CC4HInternalCartesianVector secondLocalPosition, TriangulationInputInfo secondAprilTagInput) {
-            firstAprilTagLocalPosition = firstLocalPosition;
-            firstAprilTagAbsolutePosition = firstAprilTagInput.aprilTagAbsolutePosition;
-            secondAprilTagLocalPosition = secondLocalPosition;
-            secondAprilTagAbsolutePosition = secondAprilTagInput.aprilTagAbsolutePosition;
-        }
+    /*
+     * Caller-owned output of the static solvers.  Keep one of these around per caller (per thread) and hand it
+     * back in every loop; the solvers only ever write into it, so solving a frame allocates nothing.
+     */
+    public static final class CC4HTriangulationResult {
+        public double x;
+        public double y;
+        public double theta;
+        public double residual; // RMS distance (meters) between the observed and fitted AprilTag positions
+        public int tagCount;
+        public boolean valid;   // false when the geometry was degenerate; x, y and theta are then left untouched
+        public double confidence; // 0 to 1; multi-tag solves are always 1, single-tag solves depend on ambiguity and range
     };
 
+    // Below this the determinant / spread of the local tag positions is treated as singular.
+    private static final double DEGENERACY_EPSILON = 1e-6;
+
+    // Weight of a tag whose pose ambiguity PhotonVision couldn't compute (it reports -1): trusted half as much
+    // as an unambiguous one.  Used everywhere tags are weighted by ambiguity, so they all agree.
+    public static final double UNKNOWN_AMBIGUITY_WEIGHT = 0.5;
+
     /*
-     * Solves for Vx (the unit vector moving rightwards relative to the robot) in absolute coordinates.
-     * 
-     * @param VxSolverParameter     Parameters to feed into the solver.
+     * Solves for Vy (the unit vector moving forward relative to the robot) in absolute coordinates and
+     * writes it into result.x / result.y.
+     *
+     * @param a1, b1    Local (cartesian) position of the first AprilTag.
+     * @param x1, y1    Absolute position of the first AprilTag.
+     * @param a2, b2    Local (cartesian) position of the second AprilTag.
+     * @param x2, y2    Absolute position of the second AprilTag.
      */
-    private CC4HTriangulationImplementation.CC4HInternalCartesianVector VxSolver(CC4HInternalVxVyInfo VxSolverParameters) {
-        double a1 = VxSolverParameters.firstAprilTagLocalPosition.x;
-        double b1 = VxSolverParameters.firstAprilTagLocalPosition.y;
-        double a2 = VxSolverParameters.secondAprilTagLocalPosition.x;
-        double b2 = VxSolverParameters.secondAprilTagLocalPosition.y;
-
-        double x1 = VxSolverParameters.firstAprilTagAbsolutePosition.x;
-        double y1 = VxSolverParameters.firstAprilTagAbsolutePosition.y;
-        double x2 = VxSolverParameters.secondAprilTagAbsolutePosition.x;
-        double y2 = VxSolverParameters.secondAprilTagAbsolutePosition.y;
-
-        CC4HInternalCartesianVector Vx = new CC4HInternalCartesianVector( (b1 * x2 - b2 * x1) / (b1 * a2 - b2 * a1) , (b1 * y2 - b2 * y1) / (b1 * a2 - b2 * a1) );
-        return Vx;
+    private static void VySolver(double a1, double b1, double x1, double y1, double a2, double b2, double x2, double y2, CC4HTriangulationResult result) {
+        double denominator = a1 * b2 - a2 * b1;
+        result.x = (a1 * x2 - a2 * x1) / denominator;
+        result.y = (a1 * y2 - a2 * y1) / denominator;
     }
 
     /*
-     * Solves for Vy (the unit vector moving forward relative to the robot) in absolute coordinates.
+     * Finds the angle between the absolute vertical unit vector (0,1) and the relative vertical unit vector Vy,
+     * signed: clockwise from (0,1) to Vy, in [-pi, pi].
      * 
-     * @param VySolverParameter     Parameters to feed into the solver.
+     * @param VyX, VyY     The forward vector Vy relative to the robot in absolute coordinates.
      */
-    private CC4HTriangulationImplementation.CC4HInternalCartesianVector VySolver(CC4HInternalVxVyInfo VySolverParameters) {
-        double a1 = VySolverParameters.firstAprilTagLocalPosition.x;
-        double b1 = VySolverParameters.firstAprilTagLocalPosition.y;
-        double a2 = VySolverParameters.secondAprilTagLocalPosition.x;
-        double b2 = VySolverParameters.secondAprilTagLocalPosition.y;
-
-        double x1 = VySolverParameters.firstAprilTagAbsolutePosition.x;
-        double y1 = VySolverParameters.firstAprilTagAbsolutePosition.y;
-        double x2 = VySolverParameters.secondAprilTagAbsolutePosition.x;
-        double y2 = VySolverParameters.secondAprilTagAbsolutePosition.y;
-
-        CC4HInternalCartesianVector Vy = new CC4HInternalCartesianVector( (a1 * x2 - a2 * x1) / (a1 * b2 - a2 * b1) , (a1 * y2 - a2 * y1) / (a1 * b2 - a2 * b1) );
-        return Vy;
+    private static double angleBetweenAbsoluteYRelativeYSolver(double VyX, double VyY) {
+        // arccos(Vy.y / |Vy|) only gives the size of the angle; Vy.x says which way, so one atan2 gives both
+        return Math.atan2(VyX, VyY);
     }
 
     /*
-     * Finds the angle between the absolute vertical unit vector (0,1) and the relative vertical unit vector Vy.
-     * 
-     * @param Vy     The forward vector Vy relative to the robot in absolute coordinates.
+     * Static, reentrant and allocation-free version of calculateTriangulationVector.  Everything comes in as
+     * primitives and the robot position/heading is written into the caller-supplied result.
+     *
+     * @param x1, y1       Absolute position of the first AprilTag.
+     * @param d1, alpha1   Flattened distance and angle (radians, from the forward vector) of the first AprilTag.
+     * @param x2, y2       Absolute position of the second AprilTag.
+     * @param d2, alpha2   Flattened distance and angle (radians, from the forward vector) of the second AprilTag.
+     * @param result       Where the robot position and heading are written.
+     */
+    public static void solveTwoTag(double x1, double y1, double d1, double alpha1,
+                                   double x2, double y2, double d2, double alpha2,
+                                   CC4HTriangulationResult result) {
+        solveTwoTag(x1, y1, d1, Math.sin(alpha1), Math.cos(alpha1),
+                    x2, y2, d2, Math.sin(alpha2), Math.cos(alpha2), result);
+    }
+
+    /*
+     * solveTwoTag for callers that already have the sine and cosine of each angle (see TagObservation), so
+     * no trig function is called on the angles again.
+     *
+     * @param x1, y1             Absolute position of the first AprilTag.
+     * @param d1, sin1, cos1     Flattened distance, and sine and cosine of the angle (radians, from the forward
+     *                           vector) of the first AprilTag.
+     * @param x2, y2             Absolute position of the second AprilTag.
+     * @param d2, sin2, cos2     The same for the second AprilTag.
+     * @param result             Where the robot position and heading are written.
+     */
+    public static void solveTwoTag(double x1, double y1, double d1, double sin1, double cos1,
+                                   double x2, double y2, double d2, double sin2, double cos2,
+                                   CC4HTriangulationResult result) {
+        // Same conversion as CC4HInternalPolarVector.convertPolarToCartesian
+        double a1 = d1 * sin1;
+        double b1 = d1 * cos1;
+        double a2 = d2 * sin2;
+        double b2 = d2 * cos2;
+
+        result.tagCount = 2;
+        result.residual = 0.0;
+
+        // Both tags along the same ray from the robot (or one of them on top of it) means a1*b2 - a2*b1 ~ 0
+        if (Math.abs(a1 * b2 - a2 * b1) < DEGENERACY_EPSILON) {
+            result.valid = false;
+            return;
+        }
+
+        double previousX = result.x;
+        double previousY = result.y;
+
+        VySolver(a1, b1, x1, y1, a2, b2, x2, y2, result);
+
+        double theta = angleBetweenAbsoluteYRelativeYSolver(result.x, result.y);
+        // sin and cos of theta + alpha1 by the angle sum identities; Vy is (sin(theta), cos(theta)) scaled
+        double length = Math.sqrt(result.x * result.x + result.y * result.y);
+        double sinTheta = result.x / length;
+        double cosTheta = result.y / length;
+        double x = x1 - (a1 * cosTheta + b1 * sinTheta);
+        double y = y1 - (b1 * cosTheta - a1 * sinTheta);
+
+        if (!Double.isFinite(x) || !Double.isFinite(y) || !Double.isFinite(theta)) {
+            result.x = previousX;
+            result.y = previousY;
+            result.valid = false;
+            return;
+        }
+
+        result.x = x;
+        result.y = y;
+        result.theta = theta;
+        result.confidence = 1.0;
+        result.valid = true;
+    }
+
+    /*
+     * Closed-form least-squares rigid 2D fit (Kabsch) over every visible AprilTag.  Finds the rotation and
+     * translation that best map the local tag positions onto the absolute ones, so the robot pose uses all of
+     * the tags instead of just two.  O(count), allocation-free and reentrant.
+     *
+     * theta is the signed clockwise angle from the absolute +y axis to the robot's forward vector, in [-pi, pi],
+     * the same convention solveTwoTag uses.
+     *
+     * @param absoluteX, absoluteY    Absolute AprilTag positions.
+     * @param localX, localY          Local (cartesian) AprilTag positions: x to the right, y forward.
+     * @param count                   Number of AprilTags to use from the arrays.
+     * @param result                  Where the robot pose, residual and degeneracy flag are written.
+     */
+    public static void solveLeastSquares(double[] absoluteX, double[] absoluteY, double[] localX, double[] localY,
+                                         int count, CC4HTriangulationResult result) {
+        result.tagCount = count;
+        if (count < 2) {
+            result.valid = false;
+            return;
+        }
+
+        double localMeanX = 0.0, localMeanY = 0.0, absoluteMeanX = 0.0, absoluteMeanY = 0.0;
+        for (int i = 0; i < count; i++) {
+            localMeanX += localX[i];
+            localMeanY += localY[i];
+            absoluteMeanX += absoluteX[i];
+            absoluteMeanY += absoluteY[i];
+        }
+        localMeanX /= count;
+        localMeanY /= count;
+        absoluteMeanX /= count;
+        absoluteMeanY /= count;
+
+        // Cross and dot sums of the centred point sets give the best rotation directly in 2D
+        double dot = 0.0, cross = 0.0, spread = 0.0;
+        for (int i = 0; i < count; i++) {
+            double px = localX[i] - localMeanX;
+            double py = localY[i] - localMeanY;
+            double qx = absoluteX[i] - absoluteMeanX;
+            double qy = absoluteY[i] - absoluteMeanY;
+            dot += px * qx + py * qy;
+            cross += px * qy - py * qx;
+            spread += px * px + py * py;
+        }
+
+        // All tags (nearly) on top of each other, or the absolute layout doesn't constrain the rotation
+        if (spread < DEGENERACY_EPSILON || Math.hypot(dot, cross) < DEGENERACY_EPSILON || !Double.isFinite(dot + cross)) {
+            result.valid = false;
+            return;
+        }
+
+        double phi = Math.atan2(cross, dot);
+        double cos = Math.cos(phi);
+        double sin = Math.sin(phi);
+        double x = absoluteMeanX - (cos * localMeanX - sin * localMeanY);
+        double y = absoluteMeanY - (sin * localMeanX + cos * localMeanY);
+
+        double squaredError = 0.0;
+        for (int i = 0; i < count; i++) {
+            double ex = cos * localX[i] - sin * localY[i] + x - absoluteX[i];
+            double ey = sin * localX[i] + cos * localY[i] + y - absoluteY[i];
+            squaredError += ex * ex + ey * ey;
+        }
+
+        result.x = x;
+        result.y = y;
+        result.theta = -phi; // phi rotates local into absolute, which is the opposite sense to theta
+        result.residual = Math.sqrt(squaredError / count);
+        result.confidence = 1.0;
+        result.valid = true;
+    }
+
+    /*
+     * Solves the robot pose from a single AprilTag.  One tag's position isn't enough on its own, so this also
+     * uses which way the tag faces: the direction of the tag's normal is known on the field and measured by the
+     * camera (PhotonVision's solvePnP on the four corners), and the difference between the two is the robot's
+     * heading.  The position then follows from the tag's local position.
+     *
+     * Angles are counterclockwise from +x, in the frame of their position (absolute or local).
+     *
+     * @param absX, absY       Absolute position of the AprilTag.
+     * @param absYaw           Absolute direction the AprilTag faces.
+     * @param localX, localY   Local position of the AprilTag.
+     * @param localYaw         Local direction the AprilTag faces.
+     * @param ambiguity        PhotonVision pose ambiguity of the tag, negative if unknown.
+     * @param maxAmbiguity     Ambiguity at or above which the solve is rejected.
+     * @param fullRange        Distance (meters) at which the confidence halves.
+     * @param result           Receives the pose and its confidence.
      */
-    private double angleBetweenAbsoluteYRelativeYSolver(CC4HInternalCartesianVector Vy) {
-        // arccos( ([0 1] · Vy) / (|[0 1]| |Vy|) ) = arccos(Vy.y / |Vy|)
-        double length = Math.sqrt(Vy.x*Vy.x + Vy.y*Vy.y);
-        return Math.acos(Vy.y / length);
+    public static void solveSingleTag(double absX, double absY, double absYaw, double localX, double localY, double localYaw,
+                                      double ambiguity, double maxAmbiguity, double fullRange, CC4HTriangulationResult result) {
+        result.tagCount = 1;
+        result.residual = 0.0;
+
+        // Past this the two solvePnP solutions are too close to tell apart, and the heading could be either
+        if (ambiguity >= maxAmbiguity || !(localX * localX + localY * localY > DEGENERACY_EPSILON)) {
+            result.valid = false;
+            result.confidence = 0.0;
+            return;
+        }
+
+        // Rotating local into absolute adds (absYaw - localYaw), which is the opposite sense to theta
+        double theta = Math.IEEEremainder(localYaw - absYaw, 2 * Math.PI);
+        double sin = Math.sin(theta);
+        double cos = Math.cos(theta);
+        double x = absX - (localX * cos + localY * sin);
+        double y = absY - (-localX * sin + localY * cos);
+        if (!Double.isFinite(x) || !Double.isFinite(y) || !Double.isFinite(theta)) {
+            result.valid = false;
+            result.confidence = 0.0;
+            return;
+        }
+
+        double rangeSquared = (localX * localX + localY * localY) / (fullRange * fullRange);
+        double ambiguityFactor = ambiguity < 0.0 ? UNKNOWN_AMBIGUITY_WEIGHT : 1.0 - ambiguity / maxAmbiguity;
+
+        result.x = x;
+        result.y = y;
+        result.theta = theta;
+        result.confidence = ambiguityFactor / (1.0 + rangeSquared);
+        result.valid = true;
+    }
+
+    /*
+     * Converts a flattened distance and angle (from the forward vector) into the local cartesian arrays used by
+     * solveLeastSquares, using the same interpretation as CC4HInternalPolarVector.
+     */
+    public static void polarToLocal(double distance, double angle, double[] localX, double[] localY, int index) {
+        polarToLocal(distance, Math.sin(angle), Math.cos(angle), localX, localY, index);
+    }
+
+    /*
+     * polarToLocal with the sine and cosine of the angle already computed.
+     */
+    public static void polarToLocal(double distance, double sin, double cos, double[] localX, double[] localY, int index) {
+        localX[index] = distance * sin;
+        localY[index] = distance * cos;
     }
 
     public class TriangulationInputInfo {
@@ -136,34 +322,33 @@ public class CC4HTriangulationImplementation {
      * 
      * @param absolute       The absolute AprilTag position as a Translation2d.
      * @param distanceFlattened       "Flattened" distance of AprilTag from robot.
-     * @param yaw   Yaw of AprilTag from PhotonVision.
+     * @param yaw   Yaw of AprilTag from PhotonVision, in degrees (positive right).  CC4HInternalPolarVector
+     *              works in radians, so it's converted here.
      */
     public TriangulationInputInfo NastyInputInfoCavemanBrainedHack(Translation2d absolute, double distanceFlattened, double yaw) {
         return new TriangulationInputInfo(new CC4HInternalCartesianVector(absolute.getX(), absolute.getY()), 
-                                          new CC4HInternalPolarVector(distanceFlattened, yaw) );
+                                          new CC4HInternalPolarVector(distanceFlattened, Math.toRadians(yaw)) );
     }
 
     /*
-     * The one function to kick the whole process off.
+     * The one function to kick the whole process off.  Thin wrapper over solveTwoTag for callers that still
+     * work with the object types; hot loops should call solveTwoTag directly.
      * 
      * @param firstTriangulationInfo       The input information for the first AprilTag.
      * @param secondTriangulationInfo       The input information for the second AprilTag.
+     * @return the robot position and heading, or null if the two tags can't give one (both along the
+     *         same ray from the robot, or the solve blew up); never drive on a made-up pose.
      */
     public Transform2d calculateTriangulationVector(TriangulationInputInfo firstTriangulationInfo, TriangulationInputInfo secondTriangulationInfo) {
-        CC4HInternalCartesianVector firstAprilTagLocalCartesian = firstTriangulationInfo.aprilTagDistanceAndYaw.convertPolarToCartesian();
-        CC4HInternalCartesianVector secondAprilTagLocalCartesian = secondTriangulationInfo.aprilTagDistanceAndYaw.convertPolarToCartesian();
-        CC4HInternalVxVyInfo VxVySolvingVectors = new CC4HInternalVxVyInfo(firstAprilTagLocalCartesian, firstTriangulationInfo, secondAprilTagLocalCartesian, secondTriangulationInfo);
-        
-        //CC4HInternalCartesianVector Vx = VxSolver(VxVySolvingVectors); //this might be needed in the future
-        CC4HInternalCartesianVector Vy = VySolver(VxVySolvingVectors);
-        
-        double theta = angleBetweenAbsoluteYRelativeYSolver(Vy);
-        double x1 = firstTriangulationInfo.aprilTagAbsolutePosition.x;
-        double y1 = firstTriangulationInfo.aprilTagAbsolutePosition.y;
-        double d = firstTriangulationInfo.aprilTagDistanceAndYaw.r;
-        double alpha = firstTriangulationInfo.aprilTagDistanceAndYaw.theta;
-
-        CC4HInternalCartesianVector robotPosition = new CC4HInternalCartesianVector(x1 - d * Math.sin(theta + alpha),  y1 - d * Math.cos(theta + alpha));
-        return new Transform2d(robotPosition.convertCartesianToTranslation2d(), new Rotation2d(theta));
+        CC4HTriangulationResult result = new CC4HTriangulationResult();
+        solveTwoTag(firstTriangulationInfo.aprilTagAbsolutePosition.x, firstTriangulationInfo.aprilTagAbsolutePosition.y,
+                    firstTriangulationInfo.aprilTagDistanceAndYaw.r, firstTriangulationInfo.aprilTagDistanceAndYaw.theta,
+                    secondTriangulationInfo.aprilTagAbsolutePosition.x, secondTriangulationInfo.aprilTagAbsolutePosition.y,
+                    secondTriangulationInfo.aprilTagDistanceAndYaw.r, secondTriangulationInfo.aprilTagDistanceAndYaw.theta,
+                    result);
+        if (!result.valid) {
+            return null;
+        }
+        return new Transform2d(new Translation2d(result.x, result.y), new Rotation2d(result.theta));
     }
 }
@@ -0,0 +1,45 @@
+package frc.robot;
+
+import edu.wpi.first.hal.HAL;
+import frc.robot.Constants.VisionConstants;
+import frc.robot.vision.FieldLayout;
+import frc.robot.vision.FrameRecorder;
+import frc.robot.vision.VisionWarmup;
+import org.photonvision.PhotonCamera;
+
+/**
+ * Desktop run of the robot's startup, for recording the classes it loads into the class data
+ * sharing list (see the generateClassList Gradle task). Starts the simulation HAL, runs robotInit
+ * and a second of robot loops, the vision warm-up, and touches the classes only the real robot
+ * uses, then exits.
+ */
+public final class ClassListRecorder {
+  private static final int kLoops = 50;
+
+  private ClassListRecorder() {
+    throw new UnsupportedOperationException("This is a utility class!");
+  }
+
+  public static void main(String... args) {
+    if (!HAL.initialize(500, 0)) {
+      throw new IllegalStateException("Could not initialize the HAL");
+    }
+
+    Robot robot = new Robot();
+    robot.robotInit();
+    robot.simulationInit();
+    for (int i = 0; i < kLoops; i++) {
+      robot.robotPeriodic();
+      robot.simulationPeriodic();
+    }
+
+    // robotInit starts the warm-up in the background; run it here so its classes are in the list for sure
+    VisionWarmup.run(FieldLayout.loadFromDeploy(VisionConstants.kFieldLayoutFile), VisionConstants.kWarmupFrames);
+
+    // In simulation the cameras are synthetic and nothing is recorded, but the roboRIO loads these
+    new PhotonCamera(VisionConstants.kCameraNames[0]).getLatestResult();
+    FrameRecorder.class.getName();
+
+    System.exit(0);
+  }
+}
@@ -4,6 +4,11 @@
 
 package frc.robot;
 
+import edu.wpi.first.math.geometry.Rotation3d;
+import edu.wpi.first.math.geometry.Transform3d;
+import edu.wpi.first.math.geometry.Translation3d;
+import edu.wpi.first.math.util.Units;
+
 /**
  * The Constants class provides a convenient place for teams to hold robot-wide numerical or boolean
  * constants. This class should not be used for any other purpose. All constants should be declared
@@ -16,4 +21,132 @@ public final class Constants {
   public static class OperatorConstants {
     public static final int kDriverControllerPort = 0;
   }
+
+  public static class DriveConstants {
+    // Spark MAX CAN IDs
+    public static final int kLeftLeadId = 3;
+    public static final int kLeftFollowId = 4;
+    public static final int kRightLeadId = 1;
+    public static final int kRightFollowId = 2;
+
+    // Status frame periods (ms) for signals we read occasionally and ones we never read
+    public static final int kSlowStatusPeriodMs = 500;
+    public static final int kUnusedStatusPeriodMs = 65535;
+
+    // Setpoints closer than this to the last one sent aren't resent, except every keepalive period.
+    // The drive stops if nothing has asked it to move for the timeout.
+    public static final double kInputDeadband = 0.02;
+    public static final double kSetpointDeadband = 1e-3;
+    public static final long kSetpointKeepaliveNanos = 250_000_000L;
+    public static final long kDriveTimeoutNanos = 100_000_000L;
+
+    public static final double kWheelDiameterMeters = Units.inchesToMeters(6);
+    public static final double kGearRatio = 8.45;
+    public static final double kTrackWidthMeters = Units.inchesToMeters(21.5);
+
+    // Multiply the NEO encoder's motor rotations by this to get wheel travel in meters
+    public static final double kMetersPerMotorRotation = Math.PI * kWheelDiameterMeters / kGearRatio;
+
+    // Odometry samples kept for latency compensation (about 1.3 s at 50 Hz)
+    public static final int kPoseHistoryCapacity = 64;
+
+    // Odometry drift fed to the pose filter: position (m) and heading (rad) standard deviation per meter driven
+    public static final double kOdometryPositionNoisePerMeter = 0.05;
+    public static final double kOdometryHeadingNoisePerMeter = 0.03;
+
+    // Align-to-tag turning: PID gains on the target yaw in degrees, loop period (200 Hz, the yaw is
+    // carried between frames by the wheel encoders), how long a target stays usable, and the largest
+    // rotation output
+    public static final double kAlignP = 0.09;
+    public static final double kAlignD = 0.0;
+    public static final double kAlignToleranceDegrees = 1.0;
+    public static final double kAlignPeriodSeconds = 0.005;
+    public static final double kAlignTargetTimeoutSeconds = 0.25;
+    public static final double kAlignMaxRotation = 0.6;
+  }
+
+  public static class VisionConstants {
+    // PhotonVision camera names, and where each camera sits on the robot (x forward, y left, z up,
+    // counterclockwise yaw) in the same order
+    public static final String[] kCameraNames = {"Arducam_OV9281_USB_Camera"};
+    public static final Transform3d[] kRobotToCameras = {
+      new Transform3d(new Translation3d(0.0, 0.0, Units.inchesToMeters(24)), new Rotation3d())
+    };
+
+    // Frames from different cameras are merged into one solve only if they were captured within this
+    // many seconds of each other; about one frame period, since the cameras aren't synchronized
+    public static final double kCameraMergeWindowSeconds = 0.015;
+
+    // WPILib AprilTag JSON layout, relative to the deploy directory
+    public static final String kFieldLayoutFile = "fieldlayout.json";
+
+    // Highest fiducial ID the field layout table has room for
+    public static final int kMaxFiducialId = 30;
+
+    // Most tags used in a single pose solve, the best ranked of up to kMaxCandidateTags collected from
+    // one frame (or merged from all cameras); six tags are at most 15 RANSAC pairs
+    public static final int kMaxTags = 6;
+    public static final int kMaxCandidateTags = 32;
+
+    // Tag ranking: distance (meters) at which a tag's score halves
+    public static final double kSelectionHalfScoreMeters = 4.0;
+
+    // The vision thread reprocesses the latest frame if no new-frame event arrives within this time
+    public static final long kFrameWaitTimeoutNanos = 100_000_000L;
+
+    // Outlier rejection: per-frame time limit, and how far (meters) a tag may land from its field position
+    public static final long kRansacBudgetMicros = 500;
+    public static final double kRansacInlierThresholdMeters = 0.25;
+
+    // Single-tag solves: ambiguity at which PhotonVision's two pose solutions can't be told apart, and
+    // the distance (meters) at which a single-tag pose is trusted half as much
+    public static final double kMaxSingleTagAmbiguity = 0.2;
+    public static final double kSingleTagHalfConfidenceMeters = 3.0;
+
+    // Vision measurement noise for the pose filter at 1 m from a single tag; it grows with the square
+    // of the distance and shrinks with the square root of the tag count
+    public static final double kVisionPositionStdDevMeters = 0.05;
+    public static final double kVisionHeadingStdDevRadians = 0.05;
+
+    // Raw frame log for offline replay (see FrameRecorder / FrameReplay), preallocated at startup in
+    // the log directory (see LogConstants): a big one on a USB stick, a small one on the roboRIO's
+    // flash (8 MB is about ten minutes of one camera at 50 fps)
+    public static final int kFrameLogUsbBytes = 64 * 1024 * 1024;
+    public static final int kFrameLogInternalBytes = 8 * 1024 * 1024;
+
+    // Synthetic cameras for simulation (see SyntheticFrameSource): frame rate, reported latency,
+    // horizontal field of view, range, tag size, and noise at 1 m (growing with distance)
+    public static final double kSimFrameRate = 50.0;
+    public static final double kSimLatencyMillis = 30.0;
+    public static final double kSimFieldOfViewRadians = Math.toRadians(70);
+    public static final double kSimMaxRangeMeters = 6.0;
+    public static final double kSimTagSizeMeters = Units.inchesToMeters(6);
+    public static final double kSimNoiseMeters = 0.005;
+    public static final double kSimNoiseRadians = 0.01;
+
+    // Synthetic frames solved in the background at startup, enough to load the vision path's classes
+    // and get its hot methods compiled before the match
+    public static final int kWarmupFrames = 200;
+  }
+
+  public static class LogConstants {
+    // Where the frame and telemetry logs go (see LogDirectory): logs/ on the USB stick if one is
+    // mounted, else the directory on the roboRIO, and the most space all the logs may take in each;
+    // the oldest are deleted at startup
+    public static final String kLogDirectory = "/home/lvuser/logs";
+    public static final String kUsbMount = "/u";
+    public static final long kUsbMaxTotalBytes = 1024L * 1024 * 1024;
+    public static final long kInternalMaxTotalBytes = 48L * 1024 * 1024;
+
+    // Full-rate telemetry log (see TelemetryLog): records the queue holds before dropping, most targets
+    // of one frame logged, and the most values in one record (a frame of kMaxRecordTags targets)
+    public static final int kQueueCapacity = 1024;
+    public static final int kMaxRecordTags = 16;
+    public static final int kMaxRecordValues = 4 + 8 * kMaxRecordTags;
+
+    // Once-a-second metrics (see MetricsRegistry): NetworkTables table, and the port of the text
+    // endpoint (http://<robot>:5805/metrics, inside the 5800-5810 range the FMS leaves open)
+    public static final String kMetricsTable = "Metrics";
+    public static final int kMetricsPort = 5805;
+  }
 }
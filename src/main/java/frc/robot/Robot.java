@@ -4,27 +4,39 @@
 
 package frc.robot;
 
-import edu.wpi.first.math.controller.PIDController;
-import edu.wpi.first.math.geometry.Transform3d;
 import edu.wpi.first.math.util.Units;
+import edu.wpi.first.networktables.NetworkTableInstance;
+import edu.wpi.first.util.datalog.DataLog;
+import edu.wpi.first.wpilibj.DriverStation;
 import edu.wpi.first.wpilibj.TimedRobot;
-import edu.wpi.first.wpilibj.drive.DifferentialDrive;
+import edu.wpi.first.wpilibj.Timer;
 import edu.wpi.first.wpilibj2.command.Command;
 import edu.wpi.first.wpilibj2.command.CommandScheduler;
 
-import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
-
-import java.util.List;
-import java.util.stream.BaseStream;
-
-import org.photonvision.PhotonCamera;
-import org.photonvision.targeting.PhotonTrackedTarget;
-
-import com.revrobotics.CANSparkMax;
-import com.revrobotics.CANSparkMaxLowLevel.MotorType;
-
-import frc.robot.CC4HTriangulationImplementation;
-import edu.wpi.first.math.geometry.*;
+import java.io.IOException;
+
+import frc.robot.Constants.DriveConstants;
+import frc.robot.Constants.LogConstants;
+import frc.robot.Constants.VisionConstants;
+import frc.robot.commands.AlignToTagCommand;
+import frc.robot.subsystems.DrivetrainSubsystem;
+import frc.robot.util.DoubleTelemetry;
+import frc.robot.util.LogDirectory;
+import frc.robot.util.MetricsRegistry;
+import frc.robot.util.PoseHistoryBuffer;
+import frc.robot.util.StageTimer;
+import frc.robot.util.StringTelemetry;
+import frc.robot.util.TelemetryLog;
+import frc.robot.vision.CameraSet;
+import frc.robot.vision.FieldLayout;
+import frc.robot.vision.FrameRecorder;
+import frc.robot.vision.PoseKalmanFilter;
+import frc.robot.vision.ScriptedTrajectory;
+import frc.robot.vision.SyntheticFrameSource;
+import frc.robot.vision.VisionPipeline;
+import frc.robot.vision.VisionPoseSample;
+import frc.robot.vision.VisionSimulation;
+import frc.robot.vision.VisionWarmup;
 
 /**
  * The VM is configured to automatically run this class, and to call the functions corresponding to
@@ -35,13 +47,72 @@ import edu.wpi.first.math.geometry.*;
 public class Robot extends TimedRobot {
   private Command m_autonomousCommand;
   private RobotContainer m_robotContainer;
-  private PhotonCamera camera = new PhotonCamera("Arducam_OV9281_USB_Camera");
 
-  private final CANSparkMax _leftLeadMotor = new CANSparkMax(3, MotorType.kBrushless);
-  private final CANSparkMax _leftFollowMotor = new CANSparkMax(4, MotorType.kBrushless);
-  private final CANSparkMax _rightLeadMotor = new CANSparkMax(1, MotorType.kBrushless);
-  private final CANSparkMax _rightFollowMotor = new CANSparkMax(2, MotorType.kBrushless);
-  private final DifferentialDrive _drive = new DifferentialDrive(_leftLeadMotor, _rightLeadMotor);
+  // Synthetic cameras and the path they're driven along, only in simulation
+  private SyntheticFrameSource[] m_simulatedCameras;
+  private ScriptedTrajectory m_simulatedTrajectory;
+  private final double[] m_simulatedPose = new double[3];
+  private double m_simulatedTime;
+  private VisionPipeline m_visionPipeline;
+
+  private DrivetrainSubsystem m_drivetrain;
+  private AlignToTagCommand m_alignToTag;
+
+    // Wheel odometry (x forward, y left, heading counterclockwise), integrated from the encoders
+  private double m_odometryX;
+  private double m_odometryY;
+  private double m_odometryHeading;
+  private double m_lastLeftMeters;
+  private double m_lastRightMeters;
+
+    // Odometry history so vision poses can be applied at the time the image was captured
+  private final PoseHistoryBuffer m_odometryHistory = new PoseHistoryBuffer(DriveConstants.kPoseHistoryCapacity);
+  private final double[] m_odometryAtCapture = new double[3];
+  private final double[] m_compensated = new double[3];
+
+  // Odometry between frames, corrected by vision whenever a pose comes in
+  private final PoseKalmanFilter m_poseFilter =
+      new PoseKalmanFilter(DriveConstants.kOdometryPositionNoisePerMeter, DriveConstants.kOdometryHeadingNoisePerMeter);
+
+    // Telemetry publishers are created once; unchanged values aren't re-sent and the target info is rate limited
+  private final StringTelemetry m_targetStatus = new StringTelemetry("Target Status");
+  private final DoubleTelemetry m_targetX = new DoubleTelemetry("Target X", 1e-3, 10);
+  private final DoubleTelemetry m_targetY = new DoubleTelemetry("Target Y", 1e-3, 10);
+  private final DoubleTelemetry m_targetZ = new DoubleTelemetry("Target Z", 1e-3, 10);
+  private final DoubleTelemetry m_targetPitch = new DoubleTelemetry("Target Pitch", 0.05, 10);
+  private final DoubleTelemetry m_targetYaw = new DoubleTelemetry("Target Yaw", 0.05, 10);
+  private final DoubleTelemetry m_aprilTagId = new DoubleTelemetry("AprilTag ID");
+  private final DoubleTelemetry m_robotX = new DoubleTelemetry("Robot X", 1e-3, 0);
+  private final DoubleTelemetry m_robotY = new DoubleTelemetry("Robot Y", 1e-3, 0);
+  private final DoubleTelemetry m_robotResidual = new DoubleTelemetry("Robot Residual", 1e-3, 10);
+  private final DoubleTelemetry m_rejectedTags = new DoubleTelemetry("Rejected Tags", 0, 10);
+  private final DoubleTelemetry m_robotXNow = new DoubleTelemetry("Robot X (Now)", 1e-3, 0);
+  private final DoubleTelemetry m_robotYNow = new DoubleTelemetry("Robot Y (Now)", 1e-3, 0);
+  private final DoubleTelemetry m_robotXFiltered = new DoubleTelemetry("Robot X (Filtered)", 1e-3, 0);
+  private final DoubleTelemetry m_robotYFiltered = new DoubleTelemetry("Robot Y (Filtered)", 1e-3, 0);
+  private final DoubleTelemetry m_robotThetaFiltered = new DoubleTelemetry("Robot Theta (Filtered)", 1e-3, 0);
+  private final DoubleTelemetry m_visionCacheHits = new DoubleTelemetry("Vision Cache Hits", 0, 1);
+  private final DoubleTelemetry m_visionCacheMisses = new DoubleTelemetry("Vision Cache Misses", 0, 1);
+  private final DoubleTelemetry m_droppedLogRecords = new DoubleTelemetry("Dropped Log Records", 0, 1);
+
+  // Loop time, vision rates, GC pauses and the like, once a second over NetworkTables and HTTP
+  private final MetricsRegistry m_metrics = new MetricsRegistry();
+  private final MetricsRegistry.Counter m_loopsMetric = m_metrics.counter("robot/loops");
+  private final MetricsRegistry.Gauge m_warmupMetric = m_metrics.gauge("vision/warmup_ms");
+
+  // Full-rate telemetry to disk, written off the main thread
+  private TelemetryLog m_telemetryLog;
+  private int m_poseLogEntry;
+  private final double[] m_poseLogValues = new double[7];
+
+    // Per-stage timing of robotPeriodic, so loop overruns can be pinned on something
+  private static final int kOdometryStage = 0;
+  private static final int kVisionStage = 1;
+  private static final int kTelemetryStage = 2;
+  private static final int kDriveStage = 3;
+  private static final int kSchedulerStage = 4;
+  private final StageTimer m_loopTimer =
+      new StageTimer("Loop Timing", "Odometry", "Vision Handoff", "Telemetry", "Drive", "Scheduler");
 
   final double CAMERA_HEIGHT_METERS = Units.inchesToMeters(24);
   final double TARGET_HEIGHT_METERS = Units.feetToMeters(5);
@@ -51,9 +122,6 @@ public class Robot extends TimedRobot {
     // How far from the target we want to be
   final double GOAL_RANGE_METERS = Units.feetToMeters(3);
 
-  final double ANGULAR_P = 0.09;
-  final double ANGULAR_D = 0.0;
-  PIDController turnController = new PIDController(ANGULAR_P, 0, ANGULAR_D);
 
             /**
    * This function is run when the robot is first started up and should be used for any
@@ -64,20 +132,40 @@ public class Robot extends TimedRobot {
     // Instantiate our RobotContainer.  This will perform all our button bindings, and put our
     // autonomous chooser on the dashboard.
     m_robotContainer = new RobotContainer();
+    m_drivetrain = m_robotContainer.getDrivetrain();
 
-    _leftLeadMotor.setSmartCurrentLimit(40);
-    _leftFollowMotor.setSmartCurrentLimit(40);
-    _rightLeadMotor.setSmartCurrentLimit(40);
-    _rightFollowMotor.setSmartCurrentLimit(40);
-        
-        
-        //Set lead and follow motors
-    _leftFollowMotor.follow(_leftLeadMotor);
-    _rightFollowMotor.follow(_rightLeadMotor);
+    FieldLayout fieldLayout = FieldLayout.loadFromDeploy(VisionConstants.kFieldLayoutFile);
+    startVisionWarmup(fieldLayout);
 
-            //Left side needs inverted
-    _leftLeadMotor.setInverted(true);
-    _rightLeadMotor.setInverted(false);
+    CameraSet cameras;
+    if (isSimulation()) {
+      // No PhotonVision in simulation, the cameras are faked from a scripted drive
+      m_simulatedCameras = VisionSimulation.createSources(fieldLayout);
+      m_simulatedTrajectory = VisionSimulation.createTrajectory(fieldLayout);
+      cameras = new CameraSet(m_simulatedCameras, VisionConstants.kRobotToCameras, fieldLayout);
+    } else {
+      cameras = new CameraSet(VisionConstants.kCameraNames, VisionConstants.kRobotToCameras, fieldLayout);
+    }
+    LogDirectory logDirectory = openLogDirectory();
+    m_telemetryLog = createTelemetryLog(logDirectory);
+    m_loopTimer.logTo(m_telemetryLog, "robot/timing");
+    m_poseLogEntry =
+        m_telemetryLog.addEntry(
+            "robot/pose", "odometry x, y, heading, filtered x, y, theta, filtered position std dev");
+    m_visionPipeline = new VisionPipeline(cameras, createFrameRecorder(logDirectory), m_telemetryLog);
+    m_visionPipeline.registerMetrics(m_metrics);
+    m_visionPipeline.start();
+    startMetrics();
+    // Also flush the frame log when the robot code is stopped or restarted
+    Runtime.getRuntime().addShutdownHook(new Thread(m_visionPipeline::flushFrameLog, "Frame Log Flush"));
+
+    // Turning to a tag runs on its own faster loop and drives the motors directly
+    m_alignToTag =
+        new AlignToTagCommand(m_drivetrain, m_visionPipeline.getLatestTarget(), DriveConstants.kAlignPeriodSeconds);
+    m_robotContainer.bindAlignToTag(m_alignToTag);
+
+    m_lastLeftMeters = m_drivetrain.getLeftPositionMeters();
+    m_lastRightMeters = m_drivetrain.getRightPositionMeters();
   }
 
   /**
@@ -89,71 +177,232 @@ public class Robot extends TimedRobot {
    */
   @Override
   public void robotPeriodic() {
-    double rotationSpeed = 0.0;
-    var result = camera.getLatestResult();
-
-    if (result.hasTargets()) {
-      PhotonTrackedTarget bestTarget = result.getBestTarget();
-      Transform3d targetPose = bestTarget.getBestCameraToTarget();
-      //List<TargetCorner> corners = bestTarget.getDetectedCorners();
-
-      // SmartDashboard.putString("Target Status", "Target detected.");
-      // SmartDashboard.putNumber("Target X", targetPose.getTranslation().getX());
-      // SmartDashboard.putNumber("Target Y", targetPose.getTranslation().getY());
-      // SmartDashboard.putNumber("Target Z", targetPose.getTranslation().getZ());
-
-      // SmartDashboard.putNumber("Target Pitch", bestTarget.getPitch());
-      // SmartDashboard.putNumber("Target Yaw", bestTarget.getYaw()); // We were converting degrees to degrees lmao
-      // SmartDashboard.putNumber("Target Skew (?)", bestTarget.getSkew()); // Hopefully, this is roll.  Update: It was not roll.  We have no idea what this is.
-
-      // SmartDashboard.putNumber("AprilTag ID", bestTarget.getFiducialId());
-
-      // rotationSpeed = turnController.calculate(bestTarget.getPitch() / 3.5, 0);
-
-      // Get the list of tracked targets by Photonvision
-      List<PhotonTrackedTarget> targets = result.getTargets();
+    m_loopTimer.start();
+    m_loopsMetric.increment();
+
+    updateOdometry();
+    m_loopTimer.mark(kOdometryStage);
+
+    // The vision thread does the heavy lifting, here we only pick up its newest pose (never blocks)
+    boolean newVisionSample = m_visionPipeline.getHandoff().update();
+    m_loopTimer.mark(kVisionStage);
+
+    if (newVisionSample) {
+      VisionPoseSample sample = m_visionPipeline.getHandoff().get();
+
+      if (sample.hasTargets) {
+        m_targetStatus.set("Target detected.");
+        m_targetX.set(sample.bestX);
+        m_targetY.set(sample.bestY);
+        m_targetZ.set(sample.bestZ);
+        m_targetPitch.set(sample.bestPitch);
+        m_targetYaw.set(sample.bestYaw); // We were converting degrees to degrees lmao
+        m_aprilTagId.set(sample.bestId);
+
+        if (sample.valid) {
+          m_robotX.set(sample.x);
+          m_robotY.set(sample.y);
+          m_robotResidual.set(sample.residual);
+          m_rejectedTags.set(sample.rejectedTags);
+
+          // The pose above is where we were when the image was taken, move it forward by what odometry saw since
+          if (m_odometryHistory.sample(sample.timestampSeconds, m_odometryAtCapture)) {
+            compensateForLatency(
+                sample, m_odometryAtCapture, m_odometryX, m_odometryY, m_odometryHeading, m_compensated);
+            m_robotXNow.set(m_compensated[0]);
+            m_robotYNow.set(m_compensated[1]);
+            m_poseFilter.update(sample, m_compensated[0], m_compensated[1], m_compensated[2]);
+          }
+        }
+      } else {
+        m_targetStatus.set("No target detected.");
+      }
+    }
 
-      // We need more than 2 targets in order to do any sort of triangulation.  It makes no sense to try to do this without two or more april tags.
-      if (targets.size() >= 2) {
-        Transform3d target1Pose = targets.get(0).getBestCameraToTarget();
-        Transform3d target2Pose = targets.get(1).getBestCameraToTarget();
+    m_loopTimer.publishIfDue();
+    m_visionPipeline.getTimer().publishIfDue();
+    if (m_poseFilter.isInitialized()) {
+      m_robotXFiltered.set(m_poseFilter.getX());
+      m_robotYFiltered.set(m_poseFilter.getY());
+      m_robotThetaFiltered.set(m_poseFilter.getTheta());
+    }
+    m_visionCacheHits.set(m_visionPipeline.getCameraSet().getCacheHits());
+    m_visionCacheMisses.set(m_visionPipeline.getCameraSet().getCacheMisses());
+    m_droppedLogRecords.set(m_telemetryLog.getDroppedRecords());
+    m_metrics.publishIfDue();
+    logPose();
+    m_loopTimer.mark(kTelemetryStage);
+
+    // Commands that require the drivetrain (e.g. align to tag) own it while they run
+    if (m_drivetrain.getCurrentCommand() == null) {
+      m_drivetrain.arcadeDrive(0, 0);
+    }
+    m_loopTimer.mark(kDriveStage);
 
-        Translation2d absolute1 = new Translation2d(0.5, 2.5); 
-        Translation2d absolute2 = new Translation2d(-0.5, 2.5); 
+    // Runs the Scheduler.  This is responsible for polling buttons, adding newly-scheduled
+    // commands, running already-scheduled commands, removing finished or interrupted commands,
+    // and running subsystem periodic() methods.  This must be called from the robot's periodic
+    // block in order for anything in the Command-based framework to work.
+    CommandScheduler.getInstance().run();
+    m_loopTimer.mark(kSchedulerStage);
+    m_loopTimer.finish();
+  } 
 
-        // SmartDashboard.putString("Target 1: ", String.format("X: %f, Y: %f", target1Pose.getX(), target1Pose.getZ()));
-        // SmartDashboard.putString("Target 2: ", String.format("X: %f, Y: %f", target2Pose.getX(), target2Pose.getZ()));
+  /**
+   * Loads and compiles the vision path on a background thread, so the first frames of the match
+   * don't pay for it and robotInit doesn't wait for it. Its duration shows up in the metrics.
+   */
+  private void startVisionWarmup(FieldLayout fieldLayout) {
+    Thread warmup =
+        new Thread(
+            () -> m_warmupMetric.set(VisionWarmup.run(fieldLayout, VisionConstants.kWarmupFrames)),
+            "Vision Warmup");
+    warmup.setDaemon(true);
+    warmup.setPriority(Thread.MIN_PRIORITY);
+    warmup.start();
+  }
 
-        double flat1 = Math.sqrt(Math.pow(target1Pose.getX(), 2.0) + Math.pow(target1Pose.getZ(), 2.0)); //more placeholder!!!
-        double flat2 = Math.sqrt(Math.pow(target2Pose.getX(), 2.0) + Math.pow(target2Pose.getZ(), 2.0)); //even more placeholder!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!
+  /**
+   * Picks this boot's log directory on the robot and deletes the oldest logs there to make room for
+   * the new frame log. Returns null (no logs on disk) in simulation or if the directory can't be
+   * used.
+   */
+  private static LogDirectory openLogDirectory() {
+    if (!isReal()) {
+      return null;
+    }
+    try {
+      LogDirectory directory = LogDirectory.open();
+      directory.makeRoom(getFrameLogBytes(directory));
+      return directory;
+    } catch (IOException e) {
+      DriverStation.reportError("Could not prepare the log directory", e.getStackTrace());
+      return null;
+    }
+  }
 
-        double yaw1 = targets.get(0).getYaw(); //placeholder dont panic
-        double yaw2 = targets.get(1).getYaw(); //placeholder do panic
+  /** Size of the frame log: big on a USB stick, small on the roboRIO's flash. */
+  private static int getFrameLogBytes(LogDirectory directory) {
+    return directory.isUsb() ? VisionConstants.kFrameLogUsbBytes : VisionConstants.kFrameLogInternalBytes;
+  }
 
-        CC4HTriangulationImplementation.TriangulationInputInfo info1 = new CC4HTriangulationImplementation().NastyInputInfoCavemanBrainedHack(absolute1, flat1, yaw1);
-        CC4HTriangulationImplementation.TriangulationInputInfo info2 = new CC4HTriangulationImplementation().NastyInputInfoCavemanBrainedHack(absolute2, flat2, yaw2);
+  /**
+   * Opens a new raw frame log, so bad pose estimates can be replayed afterwards. Returns null (no
+   * recording) without a log directory or if the log can't be created.
+   */
+  private static FrameRecorder createFrameRecorder(LogDirectory directory) {
+    if (directory == null) {
+      return null;
+    }
+    try {
+      return FrameRecorder.create(directory.getPath(), getFrameLogBytes(directory));
+    } catch (IOException e) {
+      DriverStation.reportError("Could not create frame log in " + directory.getPath(), e.getStackTrace());
+      return null;
+    }
+  }
 
-        Transform2d robotTransform = new CC4HTriangulationImplementation().calculateTriangulationVector(info1, info2);
+  /**
+   * Opens the telemetry log: in the log directory on the robot, in the working directory in
+   * simulation (or if the robot has no log directory).
+   */
+  private static TelemetryLog createTelemetryLog(LogDirectory directory) {
+    String path = directory != null ? directory.getPath().toString() : "";
+    DataLog log = new DataLog(path, "telemetry-" + System.currentTimeMillis() + ".wpilog");
+    return new TelemetryLog(log, LogConstants.kQueueCapacity, LogConstants.kMaxRecordValues);
+  }
 
-        SmartDashboard.putNumber("Robot X", robotTransform.getX());
-        SmartDashboard.putNumber("Robot Y", robotTransform.getY());
-      }
-    } else {
-      SmartDashboard.putString("Target Status", "No target detected.");
+  /**
+   * Registers the robot-wide metrics and starts publishing them. Everything that registers metrics
+   * must have done so by now.
+   */
+  private void startMetrics() {
+    m_loopTimer.registerMetrics(m_metrics, "robot/loop");
+    m_metrics.counter("log/dropped_records", m_telemetryLog::getDroppedRecords);
+    m_metrics.registerGarbageCollectors();
+    try {
+      m_metrics.start(
+          NetworkTableInstance.getDefault().getTable(LogConstants.kMetricsTable), LogConstants.kMetricsPort);
+    } catch (IOException e) {
+      // Still published over NetworkTables, just not over HTTP
+      DriverStation.reportError("Could not start the metrics endpoint on port " + LogConstants.kMetricsPort, e.getStackTrace());
     }
+  }
 
-    _drive.arcadeDrive(0, rotationSpeed);
+  /** Queues this loop's odometry and filtered pose to the telemetry log. */
+  private void logPose() {
+    m_poseLogValues[0] = m_odometryX;
+    m_poseLogValues[1] = m_odometryY;
+    m_poseLogValues[2] = m_odometryHeading;
+    m_poseLogValues[3] = m_poseFilter.getX();
+    m_poseLogValues[4] = m_poseFilter.getY();
+    m_poseLogValues[5] = m_poseFilter.getTheta();
+    m_poseLogValues[6] = m_poseFilter.isInitialized() ? m_poseFilter.getPositionStdDev() : Double.NaN;
+    m_telemetryLog.append(m_poseLogEntry, m_poseLogValues, m_poseLogValues.length);
+  }
 
-    // Runs the Scheduler.  This is responsible for polling buttons, adding newly-scheduled
-    // commands, running already-scheduled commands, removing finished or interrupted commands,
-    // and running subsystem periodic() methods.  This must be called from the robot's periodic
-    // block in order for anything in the Command-based framework to work.
-    CommandScheduler.getInstance().run();
-  } 
+  /**
+   * Integrates wheel odometry from the drive encoders and records it in the odometry history. The
+   * heading comes from the difference between the two sides since we don't have a gyro.
+   */
+  private void updateOdometry() {
+    double leftMeters = m_drivetrain.getLeftPositionMeters();
+    double rightMeters = m_drivetrain.getRightPositionMeters();
+    double distance = ((leftMeters - m_lastLeftMeters) + (rightMeters - m_lastRightMeters)) / 2.0;
+    double headingChange = ((rightMeters - m_lastRightMeters) - (leftMeters - m_lastLeftMeters)) / DriveConstants.kTrackWidthMeters;
+    m_lastLeftMeters = leftMeters;
+    m_lastRightMeters = rightMeters;
+
+    // Integrate along the arc midpoint heading
+    double midHeading = m_odometryHeading + headingChange / 2.0;
+    m_odometryX += distance * Math.cos(midHeading);
+    m_odometryY += distance * Math.sin(midHeading);
+    m_odometryHeading += headingChange;
+    m_poseFilter.predict(distance, 0.0, headingChange);
+
+    m_odometryHistory.add(Timer.getFPGATimestamp(), m_odometryX, m_odometryY, m_odometryHeading);
+  }
+
+  /**
+   * Moves a vision pose from its capture time to now using the odometry motion since then. The
+   * vision pose uses the triangulation convention: x right, y forward, theta clockwise from +y; the
+   * odometry is x forward, y left, heading counterclockwise.
+   *
+   * @param sample The vision pose.
+   * @param atCapture Odometry x, y and heading when the image was captured.
+   * @param odometryX Odometry x now.
+   * @param odometryY Odometry y now.
+   * @param odometryHeading Odometry heading now.
+   * @param out Receives the moved x, y and theta (wrapped to [-pi, pi]) in elements 0, 1 and 2.
+   */
+  static void compensateForLatency(
+      VisionPoseSample sample,
+      double[] atCapture,
+      double odometryX,
+      double odometryY,
+      double odometryHeading,
+      double[] out) {
+    double captureHeading = atCapture[2];
+    double dx = odometryX - atCapture[0];
+    double dy = odometryY - atCapture[1];
+
+    // Motion since capture in the robot's own frame at capture time
+    double forward = Math.cos(captureHeading) * dx + Math.sin(captureHeading) * dy;
+    double left = -Math.sin(captureHeading) * dx + Math.cos(captureHeading) * dy;
+
+    double sin = Math.sin(sample.theta);
+    double cos = Math.cos(sample.theta);
+    out[0] = sample.x + forward * sin - left * cos;
+    out[1] = sample.y + forward * cos + left * sin;
+    out[2] = Math.IEEEremainder(sample.theta - (odometryHeading - captureHeading), 2 * Math.PI);
+  }
 
   /** This function is called once each time the robot enters Disabled mode. */
   @Override
-  public void disabledInit() {}
+  public void disabledInit() {
+    // The match is over or the robot is about to be turned off; get the frames onto the disk
+    m_visionPipeline.flushFrameLog();
+  }
 
   @Override
   public void disabledPeriodic() {}
@@ -204,5 +453,23 @@ public class Robot extends TimedRobot {
 
   /** This function is called periodically whilst in simulation. */
   @Override
-  public void simulationPeriodic() {}
+  public void simulationPeriodic() {
+    // Take a synthetic picture from the true pose every loop and wake the vision thread, as a
+    // PhotonVision frame over NetworkTables would
+    m_simulatedTime += getPeriod();
+    m_simulatedTrajectory.sample(m_simulatedTime, m_simulatedPose);
+    double now = Timer.getFPGATimestamp();
+    for (SyntheticFrameSource camera : m_simulatedCameras) {
+      camera.update(m_simulatedPose[0], m_simulatedPose[1], m_simulatedPose[2], now, VisionConstants.kSimLatencyMillis);
+    }
+    m_visionPipeline.notifyNewFrame();
+  }
+
+  @Override
+  public void close() {
+    if (m_alignToTag != null) {
+      m_alignToTag.close();
+    }
+    super.close();
+  }
 }
@@ -7,6 +7,7 @@ package frc.robot;
 import frc.robot.Constants.OperatorConstants;
 import frc.robot.commands.Autos;
 import frc.robot.commands.ExampleCommand;
+import frc.robot.subsystems.DrivetrainSubsystem;
 import frc.robot.subsystems.ExampleSubsystem;
 import edu.wpi.first.wpilibj2.command.Command;
 import edu.wpi.first.wpilibj2.command.button.CommandXboxController;
@@ -21,6 +22,7 @@ import edu.wpi.first.wpilibj2.command.button.Trigger;
 public class RobotContainer {
   // The robot's subsystems and commands are defined here...
   private final ExampleSubsystem m_exampleSubsystem = new ExampleSubsystem();
+  private final DrivetrainSubsystem m_drivetrain = new DrivetrainSubsystem();
 
   // Replace with CommandPS4Controller or CommandJoystick if needed
   private final CommandXboxController m_driverController =
@@ -51,6 +53,25 @@ public class RobotContainer {
     m_driverController.b().whileTrue(m_exampleSubsystem.exampleMethodCommand());
   }
 
+  /**
+   * The drivetrain, for the {@link Robot}'s odometry and the commands it creates.
+   *
+   * @return the drivetrain subsystem
+   */
+  public DrivetrainSubsystem getDrivetrain() {
+    return m_drivetrain;
+  }
+
+  /**
+   * Binds the align-to-tag command, which the {@link Robot} creates since it owns the vision
+   * pipeline. It runs while the driver holds A.
+   *
+   * @param alignToTag The command to bind.
+   */
+  public void bindAlignToTag(Command alignToTag) {
+    m_driverController.a().whileTrue(alignToTag);
+  }
+
   /**
    * Use this to pass the autonomous command to the main {@link Robot} class.
    *
@@ -0,0 +1,144 @@
+package frc.robot.commands;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.controller.PIDController;
+import edu.wpi.first.wpilibj.Notifier;
+import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj2.command.CommandBase;
+import frc.robot.Constants.DriveConstants;
+import frc.robot.subsystems.DrivetrainSubsystem;
+import frc.robot.vision.LatestTarget;
+
+/**
+ * Turns the robot to face the best AprilTag. The control loop runs on its own {@link Notifier}
+ * rather than in the 20 ms scheduler loop, so a new frame reaches the motors within one notifier
+ * period. The scheduler only starts and stops it.
+ *
+ * <p>Frames only come every 20 ms or so, so between frames the target yaw is carried forward with
+ * how far the wheels say the robot has turned since the last one. The PID then works on a fresh
+ * measurement every period, and its period is the notifier's, not the scheduler's.
+ *
+ * <p>The target comes from the vision thread's sequence lock, and the PID and frame state are only
+ * touched by the notifier thread (initialize just asks it to reset them). {@link Notifier#stop()}
+ * doesn't wait for an iteration that has already started, so the only lock is around driving: an
+ * iteration drives only while the command is running, checked under the same lock {@link #end}
+ * takes to clear it before stopping the drive. Once end has stopped the drive, nothing restarts it.
+ */
+public class AlignToTagCommand extends CommandBase implements AutoCloseable {
+  private final DrivetrainSubsystem m_drivetrain;
+  private final LatestTarget m_target;
+  private final LatestTarget.Reading m_reading = new LatestTarget.Reading();
+  private final PIDController m_controller;
+  private final Notifier m_notifier;
+  private final double m_periodSeconds;
+
+  // Guards driving against end(); m_running is also read without it to skip work once stopped
+  private final Object m_driveLock = new Object();
+  private volatile boolean m_running;
+  private volatile boolean m_resetRequested;
+
+  // Only touched by the notifier thread: the last frame's yaw, and the robot's heading (degrees,
+  // clockwise, from the wheels) when it came
+  private long m_lastFrame;
+  private double m_frameYawDegrees;
+  private double m_frameHeadingDegrees;
+
+  /**
+   * Creates a new AlignToTagCommand.
+   *
+   * @param drivetrain The drivetrain to turn with.
+   * @param target Where the vision thread publishes the newest target.
+   * @param periodSeconds How often the control loop runs, in seconds.
+   */
+  public AlignToTagCommand(DrivetrainSubsystem drivetrain, LatestTarget target, double periodSeconds) {
+    m_drivetrain = drivetrain;
+    m_target = target;
+    m_periodSeconds = periodSeconds;
+    m_controller = new PIDController(DriveConstants.kAlignP, 0, DriveConstants.kAlignD, periodSeconds);
+    m_controller.setTolerance(DriveConstants.kAlignToleranceDegrees);
+    m_notifier = new Notifier(this::step);
+    m_notifier.setName("AlignToTag");
+    addRequirements(drivetrain);
+  }
+
+  // Called when the command is initially scheduled.
+  @Override
+  public void initialize() {
+    // An iteration from the last run may still be finishing, so the notifier thread does the reset
+    m_resetRequested = true;
+    m_running = true;
+    m_notifier.startPeriodic(m_periodSeconds);
+  }
+
+  /** One control loop iteration, on the notifier thread. */
+  private void step() {
+    if (!m_running) {
+      return;
+    }
+    if (m_resetRequested) {
+      m_resetRequested = false;
+      m_controller.reset();
+      m_lastFrame = -1;
+    }
+
+    m_target.read(m_reading);
+    double age = Timer.getFPGATimestamp() - m_reading.timestampSeconds;
+    double rotation = 0.0;
+    if (!m_reading.hasTarget || age > DriveConstants.kAlignTargetTimeoutSeconds) {
+      // Don't keep turning on a target we lost
+      m_controller.reset();
+      m_lastFrame = -1;
+    } else {
+      double heading = getHeadingDegrees();
+      if (m_reading.frame != m_lastFrame) {
+        m_lastFrame = m_reading.frame;
+        m_frameYawDegrees = m_reading.yawDegrees;
+        m_frameHeadingDegrees = heading;
+      }
+      // Turning right moves the target left, i.e. to a smaller yaw
+      double yaw = m_frameYawDegrees - (heading - m_frameHeadingDegrees);
+
+      // Positive yaw is to the right, positive rotation is counterclockwise
+      rotation =
+          MathUtil.clamp(
+              m_controller.calculate(yaw, 0), -DriveConstants.kAlignMaxRotation, DriveConstants.kAlignMaxRotation);
+    }
+
+    synchronized (m_driveLock) {
+      if (m_running) {
+        m_drivetrain.arcadeDrive(0, rotation);
+      }
+    }
+  }
+
+  /** The robot's heading from the wheel encoders, in degrees, clockwise positive. */
+  private double getHeadingDegrees() {
+    return Math.toDegrees(
+        (m_drivetrain.getLeftPositionMeters() - m_drivetrain.getRightPositionMeters())
+            / DriveConstants.kTrackWidthMeters);
+  }
+
+  // Called once the command ends or is interrupted.
+  @Override
+  public void end(boolean interrupted) {
+    // After this block no iteration drives again, even one already past the notifier
+    synchronized (m_driveLock) {
+      m_running = false;
+    }
+    m_notifier.stop();
+    m_drivetrain.stop();
+  }
+
+  // Returns true when the command should end.
+  @Override
+  public boolean isFinished() {
+    return false;
+  }
+
+  /** Frees the notifier. */
+  @Override
+  public void close() {
+    end(true);
+    m_notifier.close();
+  }
+}
@@ -0,0 +1,165 @@
+package frc.robot.subsystems;
+
+import com.revrobotics.CANSparkMax;
+import com.revrobotics.CANSparkMaxLowLevel.MotorType;
+import com.revrobotics.CANSparkMaxLowLevel.PeriodicFrame;
+import com.revrobotics.RelativeEncoder;
+import edu.wpi.first.hal.can.CANJNI;
+import edu.wpi.first.hal.can.CANStatus;
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.wpilibj.drive.DifferentialDrive;
+import edu.wpi.first.wpilibj2.command.SubsystemBase;
+import frc.robot.Constants.DriveConstants;
+import frc.robot.util.DoubleTelemetry;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The four drivetrain Spark MAXes, configured to keep CAN traffic down: status frames only as fast
+ * as we read them, and setpoints only sent when they change (plus a slow keepalive). Reports the
+ * CAN bus utilisation and how many setpoint writes were sent and skipped.
+ *
+ * <p>{@link #arcadeDrive} and {@link #stop} may be called from any thread (the align command
+ * drives from a Notifier), the rest only from the main loop. Every setpoint write, including the
+ * main loop's timeout stop in {@link #periodic}, goes through one short lock, so the last output
+ * and the motors always agree. The write counters are atomic and read without it.
+ */
+public class DrivetrainSubsystem extends SubsystemBase {
+  private final CANSparkMax m_leftLeadMotor = new CANSparkMax(DriveConstants.kLeftLeadId, MotorType.kBrushless);
+  private final CANSparkMax m_leftFollowMotor = new CANSparkMax(DriveConstants.kLeftFollowId, MotorType.kBrushless);
+  private final CANSparkMax m_rightLeadMotor = new CANSparkMax(DriveConstants.kRightLeadId, MotorType.kBrushless);
+  private final CANSparkMax m_rightFollowMotor = new CANSparkMax(DriveConstants.kRightFollowId, MotorType.kBrushless);
+  private final RelativeEncoder m_leftEncoder = m_leftLeadMotor.getEncoder();
+  private final RelativeEncoder m_rightEncoder = m_rightLeadMotor.getEncoder();
+
+  // Last setpoints sent, and when (guarded by this)
+  private double m_leftOutput = Double.NaN;
+  private double m_rightOutput = Double.NaN;
+  private long m_lastWriteNanos;
+  private long m_lastRequestNanos;
+  private final AtomicLong m_writes = new AtomicLong();
+  private final AtomicLong m_skippedWrites = new AtomicLong();
+
+  private final CANStatus m_canStatus = new CANStatus();
+  private final DoubleTelemetry m_canUtilization = new DoubleTelemetry("CAN Utilization", 1e-3, 1);
+  private final DoubleTelemetry m_canTxFull = new DoubleTelemetry("CAN Tx Full", 0, 1);
+  private final DoubleTelemetry m_canBusOff = new DoubleTelemetry("CAN Bus Off", 0, 1);
+  private final DoubleTelemetry m_setpointWrites = new DoubleTelemetry("Drive Setpoint Writes", 0, 1);
+  private final DoubleTelemetry m_skippedSetpointWrites = new DoubleTelemetry("Drive Setpoint Writes Skipped", 0, 1);
+
+  /** Creates a new DrivetrainSubsystem and configures the motor controllers. */
+  public DrivetrainSubsystem() {
+    m_leftLeadMotor.setSmartCurrentLimit(40);
+    m_leftFollowMotor.setSmartCurrentLimit(40);
+    m_rightLeadMotor.setSmartCurrentLimit(40);
+    m_rightFollowMotor.setSmartCurrentLimit(40);
+
+    // Set lead and follow motors
+    m_leftFollowMotor.follow(m_leftLeadMotor);
+    m_rightFollowMotor.follow(m_rightLeadMotor);
+
+    // Left side needs inverted
+    m_leftLeadMotor.setInverted(true);
+    m_rightLeadMotor.setInverted(false);
+
+    m_leftEncoder.setPositionConversionFactor(DriveConstants.kMetersPerMotorRotation);
+    m_rightEncoder.setPositionConversionFactor(DriveConstants.kMetersPerMotorRotation);
+
+    configureStatusFrames(m_leftLeadMotor, true);
+    configureStatusFrames(m_rightLeadMotor, true);
+    configureStatusFrames(m_leftFollowMotor, false);
+    configureStatusFrames(m_rightFollowMotor, false);
+  }
+
+  /**
+   * Slows down every status frame we don't read. Leaders keep status 0 fast since their followers
+   * copy their output from it, and status 2 (position) at the loop rate for odometry. Nothing reads
+   * velocity, current or temperature every loop, and nothing is plugged into the analog, alternate
+   * encoder or duty cycle ports.
+   */
+  private static void configureStatusFrames(CANSparkMax motor, boolean leader) {
+    motor.setPeriodicFramePeriod(PeriodicFrame.kStatus0, leader ? 10 : DriveConstants.kSlowStatusPeriodMs);
+    motor.setPeriodicFramePeriod(PeriodicFrame.kStatus1, DriveConstants.kSlowStatusPeriodMs);
+    motor.setPeriodicFramePeriod(PeriodicFrame.kStatus2, leader ? 20 : DriveConstants.kSlowStatusPeriodMs);
+    motor.setPeriodicFramePeriod(PeriodicFrame.kStatus3, DriveConstants.kUnusedStatusPeriodMs);
+    motor.setPeriodicFramePeriod(PeriodicFrame.kStatus4, DriveConstants.kUnusedStatusPeriodMs);
+    motor.setPeriodicFramePeriod(PeriodicFrame.kStatus5, DriveConstants.kUnusedStatusPeriodMs);
+    motor.setPeriodicFramePeriod(PeriodicFrame.kStatus6, DriveConstants.kUnusedStatusPeriodMs);
+  }
+
+  /**
+   * Drives with arcade controls, the same as {@link DifferentialDrive#arcadeDrive(double, double)}.
+   * The motors are only written when the output changes, or every keepalive period.
+   *
+   * @param xSpeed Forward speed, -1 to 1.
+   * @param zRotation Rotation rate, -1 to 1, counterclockwise positive.
+   */
+  public synchronized void arcadeDrive(double xSpeed, double zRotation) {
+    // DifferentialDrive.arcadeDriveIK, without allocating its WheelSpeeds (this runs at 200 Hz)
+    double x = MathUtil.applyDeadband(MathUtil.clamp(xSpeed, -1.0, 1.0), DriveConstants.kInputDeadband);
+    double z = MathUtil.applyDeadband(MathUtil.clamp(zRotation, -1.0, 1.0), DriveConstants.kInputDeadband);
+    x = Math.copySign(x * x, x);
+    z = Math.copySign(z * z, z);
+    double left = x - z;
+    double right = x + z;
+    double greater = Math.max(Math.abs(x), Math.abs(z));
+    if (greater > 0.0) {
+      double saturation = (greater + Math.min(Math.abs(x), Math.abs(z))) / greater;
+      left /= saturation;
+      right /= saturation;
+    }
+
+    long now = System.nanoTime();
+    m_lastRequestNanos = now;
+    setOutputs(left, right, now);
+  }
+
+  /** Stops the drive. */
+  public synchronized void stop() {
+    setOutputs(0.0, 0.0, System.nanoTime());
+  }
+
+  /** Writes the outputs if they changed or the keepalive is due. Call with the lock held. */
+  private void setOutputs(double left, double right, long now) {
+    boolean changed =
+        !(Math.abs(left - m_leftOutput) <= DriveConstants.kSetpointDeadband)
+            || !(Math.abs(right - m_rightOutput) <= DriveConstants.kSetpointDeadband);
+    if (!changed && now - m_lastWriteNanos < DriveConstants.kSetpointKeepaliveNanos) {
+      m_skippedWrites.incrementAndGet();
+      return;
+    }
+    m_leftLeadMotor.set(left);
+    m_rightLeadMotor.set(right);
+    m_leftOutput = left;
+    m_rightOutput = right;
+    m_lastWriteNanos = now;
+    m_writes.incrementAndGet();
+  }
+
+  /** Distance the left side has driven, in meters. */
+  public double getLeftPositionMeters() {
+    return m_leftEncoder.getPosition();
+  }
+
+  /** Distance the right side has driven, in meters. */
+  public double getRightPositionMeters() {
+    return m_rightEncoder.getPosition();
+  }
+
+  @Override
+  public void periodic() {
+    synchronized (this) {
+      // Nobody is driving (e.g. a command ended without stopping), don't leave the last output on
+      if (System.nanoTime() - m_lastRequestNanos > DriveConstants.kDriveTimeoutNanos) {
+        setOutputs(0.0, 0.0, System.nanoTime());
+      }
+    }
+    m_setpointWrites.set(m_writes.get());
+    m_skippedSetpointWrites.set(m_skippedWrites.get());
+
+    // Straight from the HAL into a reused object; RobotController.getCANStatus() allocates one per call
+    CANJNI.getCANStatus(m_canStatus);
+    m_canUtilization.set(m_canStatus.percentBusUtilization);
+    m_canTxFull.set(m_canStatus.txFullCount);
+    m_canBusOff.set(m_canStatus.busOffCount);
+  }
+}
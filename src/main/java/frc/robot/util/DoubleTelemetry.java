@@ -0,0 +1,65 @@
+package frc.robot.util;
+
+import edu.wpi.first.networktables.DoublePublisher;
+import edu.wpi.first.networktables.NetworkTableInstance;
+
+/**
+ * A SmartDashboard number backed by a NetworkTables publisher created once, instead of a
+ * string-keyed lookup every loop. Writes are skipped when the value hasn't changed by more than an
+ * epsilon, and can be limited to a maximum rate.
+ */
+public final class DoubleTelemetry implements AutoCloseable {
+  private final DoublePublisher m_publisher;
+  private final double m_epsilon;
+  private final long m_minIntervalNanos;
+  private double m_lastValue = Double.NaN;
+  private long m_lastWrite;
+
+  /**
+   * Creates a number that is written whenever it changes.
+   *
+   * @param key SmartDashboard key.
+   */
+  public DoubleTelemetry(String key) {
+    this(key, 1e-9, 0.0);
+  }
+
+  /**
+   * Creates a number with change detection and rate limiting.
+   *
+   * @param key SmartDashboard key.
+   * @param epsilon Changes smaller than this are not written.
+   * @param maxRateHz Most writes per second, or 0 for no limit. A change held back by the limit is
+   *     written by the first {@link #set(double)} after the interval has passed.
+   */
+  public DoubleTelemetry(String key, double epsilon, double maxRateHz) {
+    m_publisher =
+        NetworkTableInstance.getDefault().getTable("SmartDashboard").getDoubleTopic(key).publish();
+    m_epsilon = epsilon;
+    m_minIntervalNanos = maxRateHz > 0 ? (long) (1e9 / maxRateHz) : 0;
+  }
+
+  /**
+   * Publishes a value, unless it's unchanged or the rate limit hasn't expired.
+   *
+   * @param value The value.
+   */
+  public void set(double value) {
+    // NaN never compares equal, so the first value (and any change to/from NaN) always goes out
+    if (Math.abs(value - m_lastValue) <= m_epsilon) {
+      return;
+    }
+    long now = System.nanoTime();
+    if (m_minIntervalNanos > 0 && now - m_lastWrite < m_minIntervalNanos) {
+      return;
+    }
+    m_publisher.set(value);
+    m_lastValue = value;
+    m_lastWrite = now;
+  }
+
+  @Override
+  public void close() {
+    m_publisher.close();
+  }
+}
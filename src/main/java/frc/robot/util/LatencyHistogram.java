@@ -0,0 +1,114 @@
+package frc.robot.util;
+
+/**
+ * Fixed-bucket latency histogram. Buckets are log-linear (four per power of two), so recording is a
+ * shift and an array increment and percentiles are accurate to within about 25%.
+ *
+ * <p>Only one thread may record. Another thread may read the counts for telemetry; it can then be
+ * a sample or two behind, which is fine for what it's used for.
+ */
+public final class LatencyHistogram {
+  private static final int kLinearBuckets = 8;
+  private static final int kBucketCount = kLinearBuckets + 24 * 4;
+
+  private final long[] m_counts = new long[kBucketCount];
+  private final long[] m_windowStart = new long[kBucketCount];
+  private long m_maxMicros;
+
+  // Results of the last closeWindow()
+  private long m_windowCount;
+  private long m_windowP50;
+  private long m_windowP99;
+  private long m_windowMax;
+
+  /**
+   * Records one measurement.
+   *
+   * @param nanos Duration, in nanoseconds.
+   */
+  public void record(long nanos) {
+    long micros = Math.max(0, nanos / 1000);
+    m_counts[bucket(micros)]++;
+    if (micros > m_maxMicros) {
+      m_maxMicros = micros;
+    }
+  }
+
+  /**
+   * Computes the percentiles of everything recorded since the previous call. Call it from the
+   * reading thread, then read the results with the getters.
+   */
+  public void closeWindow() {
+    long count = 0;
+    for (int i = 0; i < kBucketCount; i++) {
+      count += m_counts[i] - m_windowStart[i];
+    }
+
+    long p50Rank = (count * 50 + 99) / 100;
+    long p99Rank = (count * 99 + 99) / 100;
+    long seen = 0;
+    m_windowP50 = 0;
+    m_windowP99 = 0;
+    m_windowMax = 0;
+    for (int i = 0; i < kBucketCount; i++) {
+      long current = m_counts[i];
+      long inWindow = current - m_windowStart[i];
+      m_windowStart[i] = current;
+      if (inWindow == 0) {
+        continue;
+      }
+      if (seen < p50Rank && seen + inWindow >= p50Rank) {
+        m_windowP50 = upperBound(i);
+      }
+      if (seen < p99Rank && seen + inWindow >= p99Rank) {
+        m_windowP99 = upperBound(i);
+      }
+      seen += inWindow;
+      m_windowMax = upperBound(i);
+    }
+    m_windowCount = count;
+  }
+
+  /** Samples recorded in the last window. */
+  public long getWindowCount() {
+    return m_windowCount;
+  }
+
+  /** Median of the last window, in microseconds (bucket upper bound). */
+  public long getWindowP50Micros() {
+    return m_windowP50;
+  }
+
+  /** 99th percentile of the last window, in microseconds (bucket upper bound). */
+  public long getWindowP99Micros() {
+    return m_windowP99;
+  }
+
+  /** Largest sample of the last window, in microseconds (bucket upper bound). */
+  public long getWindowMaxMicros() {
+    return m_windowMax;
+  }
+
+  /** Largest sample ever recorded, in microseconds (exact). */
+  public long getMaxMicros() {
+    return m_maxMicros;
+  }
+
+  private static int bucket(long micros) {
+    if (micros < kLinearBuckets) {
+      return (int) micros;
+    }
+    int exponent = 63 - Long.numberOfLeadingZeros(micros);
+    int subBucket = (int) (micros >> (exponent - 2)) & 3;
+    return Math.min(kLinearBuckets + (exponent - 3) * 4 + subBucket, kBucketCount - 1);
+  }
+
+  private static long upperBound(int bucket) {
+    if (bucket < kLinearBuckets) {
+      return bucket + 1;
+    }
+    int exponent = (bucket - kLinearBuckets) / 4 + 3;
+    int subBucket = (bucket - kLinearBuckets) % 4;
+    return (long) (5 + subBucket) << (exponent - 2);
+  }
+}
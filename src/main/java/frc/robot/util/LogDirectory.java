@@ -0,0 +1,110 @@
+package frc.robot.util;
+
+import edu.wpi.first.wpilibj.DriverStation;
+import frc.robot.Constants.LogConstants;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Where the robot's logs go: a logs directory on the USB stick if one is plugged in, else the
+ * roboRIO's own, whose flash has far less room. Both the raw frame logs ({@code frames-*.bin}) and
+ * the telemetry logs ({@code *.wpilog}) go there, and {@link #makeRoom} deletes the oldest of them at
+ * startup so they never take more than the directory's total size.
+ */
+public final class LogDirectory {
+  private final Path m_path;
+  private final boolean m_usb;
+  private final long m_maxTotalBytes;
+
+  private LogDirectory(Path path, boolean usb, long maxTotalBytes) {
+    m_path = path;
+    m_usb = usb;
+    m_maxTotalBytes = maxTotalBytes;
+  }
+
+  /**
+   * Picks the log directory and creates it if needed.
+   *
+   * @return the USB stick's log directory if one is mounted and writable, else the roboRIO's
+   * @throws IOException if the directory can't be created
+   */
+  public static LogDirectory open() throws IOException {
+    Path usb = Paths.get(LogConstants.kUsbMount);
+    LogDirectory directory =
+        Files.isDirectory(usb) && Files.isWritable(usb)
+            ? new LogDirectory(usb.resolve("logs"), true, LogConstants.kUsbMaxTotalBytes)
+            : new LogDirectory(Paths.get(LogConstants.kLogDirectory), false, LogConstants.kInternalMaxTotalBytes);
+    Files.createDirectories(directory.m_path);
+    return directory;
+  }
+
+  /** The directory. */
+  public Path getPath() {
+    return m_path;
+  }
+
+  /** Whether the directory is on a USB stick rather than the roboRIO's flash. */
+  public boolean isUsb() {
+    return m_usb;
+  }
+
+  /**
+   * Deletes the oldest logs until the rest, plus the new logs about to be written, fit in the
+   * directory's total size.
+   *
+   * @param newBytes Space the new logs will take.
+   * @throws IOException if the directory can't be listed
+   */
+  public void makeRoom(long newBytes) throws IOException {
+    deleteOldestLogs(m_path, m_maxTotalBytes - newBytes);
+  }
+
+  /**
+   * Deletes the least recently modified logs in a directory until the rest take at most {@code
+   * keepBytes}. Other files are left alone, and logs that can't be deleted are reported and skipped.
+   *
+   * @param directory The directory holding the logs.
+   * @param keepBytes Most space the remaining logs may take.
+   * @throws IOException if the directory can't be listed
+   */
+  public static void deleteOldestLogs(Path directory, long keepBytes) throws IOException {
+    List<Path> logs = new ArrayList<>();
+    try (Stream<Path> files = Files.list(directory)) {
+      files.filter(file -> isLog(file.getFileName().toString())).forEach(logs::add);
+    }
+    // Newest first; the roboRIO's clock may not be set yet, but modification times are the best guess
+    logs.sort(Comparator.comparing(LogDirectory::lastModified).reversed());
+
+    long totalBytes = 0;
+    for (Path log : logs) {
+      totalBytes += Files.size(log);
+      if (totalBytes > keepBytes) {
+        try {
+          Files.delete(log);
+        } catch (IOException e) {
+          DriverStation.reportError("Could not delete old log " + log, e.getStackTrace());
+        }
+      }
+    }
+  }
+
+  /** Whether a file name is one of our logs: a raw frame log or a WPILib data log. */
+  private static boolean isLog(String name) {
+    return (name.startsWith("frames-") && name.endsWith(".bin")) || name.endsWith(".wpilog");
+  }
+
+  private static FileTime lastModified(Path file) {
+    try {
+      return Files.getLastModifiedTime(file);
+    } catch (IOException e) {
+      return FileTime.fromMillis(0);
+    }
+  }
+}
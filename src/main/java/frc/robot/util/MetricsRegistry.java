@@ -0,0 +1,288 @@
+package frc.robot.util;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import edu.wpi.first.networktables.NetworkTable;
+import edu.wpi.first.networktables.RawPublisher;
+import edu.wpi.first.networktables.StringArrayPublisher;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.DoubleSupplier;
+import java.util.function.LongSupplier;
+import javax.management.NotificationEmitter;
+import javax.management.openmbean.CompositeData;
+
+/**
+ * Counters and gauges for watching the robot during practice without a profiler. Metrics are
+ * registered at startup; after {@link #start} they're sampled once per second by {@link
+ * #publishIfDue()} and published two ways:
+ *
+ * <ul>
+ *   <li>as one raw NetworkTables entry, {@code values}: every metric as a little-endian double, in
+ *       the order of the string array entry {@code names} (published once);
+ *   <li>as plain text ({@code name value} per line) over HTTP at {@code /metrics}, so a browser or
+ *       curl can read it, on the robot or a desktop simulation.
+ * </ul>
+ *
+ * <p>Counting and setting gauges allocate nothing and may be done from any thread. Sampling and
+ * publishing allocate nothing either; only the HTTP handler does, on its own thread.
+ */
+public final class MetricsRegistry implements AutoCloseable {
+  private static final long kPublishPeriodNanos = 1_000_000_000L;
+
+  /** A count that only goes up. Published as the total and as a rate per second. */
+  public static final class Counter {
+    private final AtomicLong m_value = new AtomicLong();
+
+    public void increment() {
+      m_value.incrementAndGet();
+    }
+
+    public void add(long amount) {
+      m_value.addAndGet(amount);
+    }
+
+    public long get() {
+      return m_value.get();
+    }
+  }
+
+  /** A value that is set by whoever measures it. Published as the latest value. */
+  public static final class Gauge {
+    private volatile double m_value = Double.NaN;
+
+    public void set(double value) {
+      m_value = value;
+    }
+
+    public double get() {
+      return m_value;
+    }
+  }
+
+  /** Per-second rate of a count, between two samples. Only used by the sampling thread. */
+  private static final class Rate implements DoubleSupplier {
+    private final LongSupplier m_count;
+    private long m_lastCount;
+    private long m_lastNanos;
+
+    Rate(LongSupplier count) {
+      m_count = count;
+    }
+
+    @Override
+    public double getAsDouble() {
+      long now = System.nanoTime();
+      long count = m_count.getAsLong();
+      double rate = m_lastNanos == 0 ? 0.0 : (count - m_lastCount) * 1e9 / (now - m_lastNanos);
+      m_lastCount = count;
+      m_lastNanos = now;
+      return rate;
+    }
+  }
+
+  private final List<String> m_names = new ArrayList<>();
+  private final List<DoubleSupplier> m_sources = new ArrayList<>();
+
+  // Fixed at start()
+  private DoubleSupplier[] m_sourceArray;
+  private double[] m_values;
+  private ByteBuffer m_buffer;
+  private RawPublisher m_publisher;
+  private StringArrayPublisher m_namesPublisher;
+  private HttpServer m_server;
+  private long m_lastPublish;
+
+  // Copy of the last sample for the HTTP thread, guarded by this
+  private double[] m_snapshot;
+
+  /**
+   * Registers a counter.
+   *
+   * @param name Metric name, e.g. "vision/frames".
+   * @return the counter to increment
+   */
+  public Counter counter(String name) {
+    Counter counter = new Counter();
+    counter(name, counter::get);
+    return counter;
+  }
+
+  /**
+   * Registers a count kept elsewhere, e.g. the vision cache hits. It's published as the total and
+   * as a rate per second ({@code name + "/s"}).
+   *
+   * @param name Metric name.
+   * @param count Reads the count. Called once per second from the thread calling {@link
+   *     #publishIfDue()}; must not allocate.
+   */
+  public void counter(String name, LongSupplier count) {
+    gauge(name, () -> count.getAsLong());
+    gauge(name + "/s", new Rate(count));
+  }
+
+  /**
+   * Registers a gauge.
+   *
+   * @param name Metric name.
+   * @return the gauge to set
+   */
+  public Gauge gauge(String name) {
+    Gauge gauge = new Gauge();
+    gauge(name, gauge::get);
+    return gauge;
+  }
+
+  /**
+   * Registers a value read when the metrics are sampled.
+   *
+   * @param name Metric name.
+   * @param value Reads the value. Called once per second from the thread calling {@link
+   *     #publishIfDue()}; must not allocate.
+   */
+  public synchronized void gauge(String name, DoubleSupplier value) {
+    if (m_sourceArray != null) {
+      throw new IllegalStateException("Metrics must be registered before start(): " + name);
+    }
+    m_names.add(name);
+    m_sources.add(value);
+  }
+
+  /**
+   * Registers the JVM's garbage collection statistics: collections and time spent collecting per
+   * collector (with their rates, so "ms/s" is the share of each second spent in GC), the duration
+   * of the last pause and the longest pause since the previous sample, and heap use.
+   */
+  public void registerGarbageCollectors() {
+    AtomicLong lastPauseMillis = new AtomicLong();
+    AtomicLong maxPauseMillis = new AtomicLong();
+    for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+      String prefix = "gc/" + collector.getName().replace(' ', '_');
+      counter(prefix + "/count", collector::getCollectionCount);
+      counter(prefix + "/ms", collector::getCollectionTime);
+
+      // HotSpot reports every collection with its duration; this only allocates when a GC happens
+      if (collector instanceof NotificationEmitter) {
+        ((NotificationEmitter) collector)
+            .addNotificationListener(
+                (notification, handback) -> {
+                  if (!GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(
+                      notification.getType())) {
+                    return;
+                  }
+                  long duration =
+                      GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData())
+                          .getGcInfo()
+                          .getDuration();
+                  lastPauseMillis.set(duration);
+                  maxPauseMillis.accumulateAndGet(duration, Math::max);
+                },
+                null,
+                null);
+      }
+    }
+    gauge("gc/last_pause_ms", () -> lastPauseMillis.get());
+    gauge("gc/max_pause_ms", () -> maxPauseMillis.getAndSet(0));
+
+    Runtime runtime = Runtime.getRuntime();
+    gauge("jvm/heap_used_mb", () -> (runtime.totalMemory() - runtime.freeMemory()) / 1e6);
+  }
+
+  /**
+   * Ends registration, publishes the metric names and starts the HTTP endpoint.
+   *
+   * @param table NetworkTables table to publish to.
+   * @param httpPort Port for the HTTP endpoint, or 0 for none.
+   * @throws IOException if the HTTP endpoint can't be started; NetworkTables publishing still works
+   */
+  public void start(NetworkTable table, int httpPort) throws IOException {
+    synchronized (this) {
+      m_sourceArray = m_sources.toArray(new DoubleSupplier[0]);
+      m_values = new double[m_sourceArray.length];
+      m_snapshot = new double[m_sourceArray.length];
+    }
+    Arrays.fill(m_snapshot, Double.NaN);
+    m_buffer = ByteBuffer.allocate(8 * m_values.length).order(ByteOrder.LITTLE_ENDIAN);
+    m_publisher = table.getRawTopic("values").publish("metrics");
+    m_namesPublisher = table.getStringArrayTopic("names").publish();
+    m_namesPublisher.set(m_names.toArray(new String[0]));
+
+    if (httpPort > 0) {
+      m_server = HttpServer.create(new InetSocketAddress(httpPort), 0);
+      m_server.createContext("/metrics", this::handle);
+      m_server.setExecutor(
+          Executors.newSingleThreadExecutor(
+              runnable -> {
+                Thread thread = new Thread(runnable, "Metrics HTTP");
+                thread.setDaemon(true);
+                return thread;
+              }));
+      m_server.start();
+    }
+  }
+
+  /**
+   * Samples every metric and publishes them if the publish period has passed. Call it from one
+   * thread, e.g. robotPeriodic.
+   */
+  public void publishIfDue() {
+    publishIfDue(System.nanoTime());
+  }
+
+  /** {@link #publishIfDue()} at a given time, so tests can run the publishing path on every call. */
+  void publishIfDue(long now) {
+    if (m_sourceArray == null || now - m_lastPublish < kPublishPeriodNanos) {
+      return;
+    }
+    m_lastPublish = now;
+
+    m_buffer.clear();
+    for (int i = 0; i < m_sourceArray.length; i++) {
+      m_values[i] = m_sourceArray[i].getAsDouble();
+      m_buffer.putDouble(m_values[i]);
+    }
+    m_publisher.set(m_buffer.array());
+    synchronized (this) {
+      System.arraycopy(m_values, 0, m_snapshot, 0, m_values.length);
+    }
+  }
+
+  /** Serves the last sample as text, one {@code name value} line per metric. */
+  private void handle(HttpExchange exchange) throws IOException {
+    StringBuilder text = new StringBuilder(64 * m_names.size());
+    synchronized (this) {
+      for (int i = 0; i < m_snapshot.length; i++) {
+        text.append(m_names.get(i)).append(' ').append(m_snapshot[i]).append('\n');
+      }
+    }
+    byte[] body = text.toString().getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+    exchange.sendResponseHeaders(200, body.length);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(body);
+    }
+  }
+
+  @Override
+  public void close() {
+    if (m_server != null) {
+      m_server.stop(0);
+    }
+    if (m_publisher != null) {
+      m_publisher.close();
+      m_namesPublisher.close();
+    }
+  }
+}
@@ -0,0 +1,122 @@
+package frc.robot.util;
+
+/**
+ * Fixed-capacity ring buffer of timestamped 2D poses, used to look up where the robot was when a
+ * camera image was captured. Samples live in parallel primitive arrays; inserting and querying never
+ * allocate, and queries are a binary search plus one interpolation.
+ */
+public final class PoseHistoryBuffer {
+  private final double[] m_time;
+  private final double[] m_x;
+  private final double[] m_y;
+  private final double[] m_heading;
+  private final int m_mask;
+  private int m_start;
+  private int m_size;
+
+  /**
+   * Creates the buffer.
+   *
+   * @param capacity Number of samples kept. Rounded up to a power of two.
+   */
+  public PoseHistoryBuffer(int capacity) {
+    int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+    m_time = new double[size];
+    m_x = new double[size];
+    m_y = new double[size];
+    m_heading = new double[size];
+    m_mask = size - 1;
+  }
+
+  /**
+   * Adds a sample, overwriting the oldest one when full. Samples must be added in time order;
+   * anything not newer than the latest sample is dropped.
+   *
+   * @param timestampSeconds Time of the sample.
+   * @param x Position x, in meters.
+   * @param y Position y, in meters.
+   * @param heading Heading, in radians.
+   * @return false if the sample was out of order and dropped
+   */
+  public boolean add(double timestampSeconds, double x, double y, double heading) {
+    if (m_size > 0 && timestampSeconds <= m_time[index(m_size - 1)]) {
+      return false;
+    }
+
+    int i;
+    if (m_size == m_time.length) {
+      i = m_start;
+      m_start = (m_start + 1) & m_mask;
+    } else {
+      i = index(m_size);
+      m_size++;
+    }
+    m_time[i] = timestampSeconds;
+    m_x[i] = x;
+    m_y[i] = y;
+    m_heading[i] = heading;
+    return true;
+  }
+
+  /**
+   * Interpolates the pose at an arbitrary time. Times newer than the latest sample return the latest
+   * sample.
+   *
+   * @param timestampSeconds Time to look up.
+   * @param out Receives x, y and heading in elements 0, 1 and 2. An interpolated heading turns the
+   *     short way between its samples and is wrapped to [-pi, pi].
+   * @return false if the buffer is empty or the time is older than anything it holds
+   */
+  public boolean sample(double timestampSeconds, double[] out) {
+    if (m_size == 0 || timestampSeconds < m_time[m_start]) {
+      return false;
+    }
+
+    int newest = index(m_size - 1);
+    if (timestampSeconds >= m_time[newest]) {
+      out[0] = m_x[newest];
+      out[1] = m_y[newest];
+      out[2] = m_heading[newest];
+      return true;
+    }
+
+    // Find the first sample newer than the requested time; the one before it is older or equal
+    int low = 1;
+    int high = m_size - 1;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (m_time[index(mid)] > timestampSeconds) {
+        high = mid;
+      } else {
+        low = mid + 1;
+      }
+    }
+
+    int after = index(low);
+    int before = index(low - 1);
+    double t = (timestampSeconds - m_time[before]) / (m_time[after] - m_time[before]);
+    out[0] = m_x[before] + (m_x[after] - m_x[before]) * t;
+    out[1] = m_y[before] + (m_y[after] - m_y[before]) * t;
+    // The short way round, and still wrapped if that crosses pi
+    out[2] =
+        Math.IEEEremainder(
+            m_heading[before] + Math.IEEEremainder(m_heading[after] - m_heading[before], 2 * Math.PI) * t,
+            2 * Math.PI);
+    return true;
+  }
+
+  /** Removes every sample. */
+  public void clear() {
+    m_start = 0;
+    m_size = 0;
+  }
+
+  /** Number of samples currently held. */
+  public int size() {
+    return m_size;
+  }
+
+  private int index(int logicalIndex) {
+    return (m_start + logicalIndex) & m_mask;
+  }
+}
@@ -0,0 +1,127 @@
+package frc.robot.util;
+
+
+/**
+ * Times consecutive stages of a loop into preallocated {@link LatencyHistogram}s. Call {@link
+ * #start()} at the top of the loop and {@link #mark(int)} at the end of each stage; each mark costs
+ * one {@link System#nanoTime()} and an array increment, so it can stay on during matches.
+ *
+ * <p>Percentiles are published to SmartDashboard at most once per publish period, and only when
+ * they change.
+ */
+public final class StageTimer {
+  private static final long kPublishPeriodNanos = 1_000_000_000L;
+
+  private final LatencyHistogram[] m_histograms;
+  private final DoubleTelemetry[] m_p50;
+  private final DoubleTelemetry[] m_p99;
+  private final DoubleTelemetry[] m_max;
+  private long m_loopStart;
+  private long m_stageStart;
+  private long m_lastPublish;
+
+  // Every loop's stage durations, for the telemetry log
+  private final double[] m_durationsMicros;
+  private TelemetryLog m_log;
+  private int m_logEntry;
+
+  /**
+   * Creates the timer.
+   *
+   * @param name Name of the loop, used as the SmartDashboard key prefix.
+   * @param stageNames Names of the stages, indexed by the stage number passed to {@link #mark(int)}.
+   */
+  public StageTimer(String name, String... stageNames) {
+    // The last histogram is the whole loop
+    int count = stageNames.length + 1;
+    m_durationsMicros = new double[count];
+    m_histograms = new LatencyHistogram[count];
+    m_p50 = new DoubleTelemetry[count];
+    m_p99 = new DoubleTelemetry[count];
+    m_max = new DoubleTelemetry[count];
+    for (int i = 0; i < count; i++) {
+      String prefix = name + "/" + (i < stageNames.length ? stageNames[i] : "Total");
+      m_histograms[i] = new LatencyHistogram();
+      m_p50[i] = new DoubleTelemetry(prefix + " p50 (us)");
+      m_p99[i] = new DoubleTelemetry(prefix + " p99 (us)");
+      m_max[i] = new DoubleTelemetry(prefix + " max (us)");
+    }
+  }
+
+  /**
+   * Also writes every loop's stage durations (in microseconds, the total last) to a telemetry log.
+   *
+   * @param log The log to write to.
+   * @param entryName Name of the log entry.
+   */
+  public void logTo(TelemetryLog log, String entryName) {
+    m_logEntry = log.addEntry(entryName, "stage durations (us), total last");
+    m_log = log;
+  }
+
+  /**
+   * Also publishes p50/p99/max of the whole loop through a metrics registry. The values are those
+   * of the last {@link #publishIfDue()} window.
+   *
+   * @param registry The registry, not started yet.
+   * @param prefix Metric name prefix, e.g. "robot/loop".
+   */
+  public void registerMetrics(MetricsRegistry registry, String prefix) {
+    LatencyHistogram total = m_histograms[m_histograms.length - 1];
+    registry.gauge(prefix + "/p50_us", () -> total.getWindowP50Micros());
+    registry.gauge(prefix + "/p99_us", () -> total.getWindowP99Micros());
+    registry.gauge(prefix + "/max_us", () -> total.getWindowMaxMicros());
+  }
+
+  /** Marks the start of a loop iteration. */
+  public void start() {
+    m_loopStart = System.nanoTime();
+    m_stageStart = m_loopStart;
+  }
+
+  /**
+   * Marks the end of a stage, recording the time since the previous mark (or {@link #start()}).
+   *
+   * @param stage Index of the stage that just finished.
+   */
+  public void mark(int stage) {
+    long now = System.nanoTime();
+    m_histograms[stage].record(now - m_stageStart);
+    m_durationsMicros[stage] = (now - m_stageStart) / 1e3;
+    m_stageStart = now;
+  }
+
+  /** Marks the end of a loop iteration, recording the time since {@link #start()}. */
+  public void finish() {
+    long total = System.nanoTime() - m_loopStart;
+    m_histograms[m_histograms.length - 1].record(total);
+    if (m_log != null) {
+      m_durationsMicros[m_durationsMicros.length - 1] = total / 1e3;
+      m_log.append(m_logEntry, m_durationsMicros, m_durationsMicros.length);
+    }
+  }
+
+  /**
+   * Publishes p50/p99/max for the last window if the publish period has passed. May be called from
+   * a different thread than the one recording.
+   */
+  public void publishIfDue() {
+    publishIfDue(System.nanoTime());
+  }
+
+  /** {@link #publishIfDue()} at a given time, so tests can run the publishing path on every call. */
+  void publishIfDue(long now) {
+    if (now - m_lastPublish < kPublishPeriodNanos) {
+      return;
+    }
+    m_lastPublish = now;
+
+    for (int i = 0; i < m_histograms.length; i++) {
+      LatencyHistogram histogram = m_histograms[i];
+      histogram.closeWindow();
+      m_p50[i].set(histogram.getWindowP50Micros());
+      m_p99[i].set(histogram.getWindowP99Micros());
+      m_max[i].set(histogram.getWindowMaxMicros());
+    }
+  }
+}
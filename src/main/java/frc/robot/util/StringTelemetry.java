@@ -0,0 +1,61 @@
+package frc.robot.util;
+
+import edu.wpi.first.networktables.NetworkTableInstance;
+import edu.wpi.first.networktables.StringPublisher;
+
+/**
+ * A SmartDashboard string backed by a NetworkTables publisher created once. Writes are skipped when
+ * the value hasn't changed, and can be limited to a maximum rate.
+ */
+public final class StringTelemetry implements AutoCloseable {
+  private final StringPublisher m_publisher;
+  private final long m_minIntervalNanos;
+  private String m_lastValue;
+  private long m_lastWrite;
+
+  /**
+   * Creates a string that is written whenever it changes.
+   *
+   * @param key SmartDashboard key.
+   */
+  public StringTelemetry(String key) {
+    this(key, 0.0);
+  }
+
+  /**
+   * Creates a string with change detection and rate limiting.
+   *
+   * @param key SmartDashboard key.
+   * @param maxRateHz Most writes per second, or 0 for no limit. A change held back by the limit is
+   *     written by the first {@link #set(String)} after the interval has passed.
+   */
+  public StringTelemetry(String key, double maxRateHz) {
+    m_publisher =
+        NetworkTableInstance.getDefault().getTable("SmartDashboard").getStringTopic(key).publish();
+    m_minIntervalNanos = maxRateHz > 0 ? (long) (1e9 / maxRateHz) : 0;
+  }
+
+  /**
+   * Publishes a value, unless it's unchanged or the rate limit hasn't expired. Meant for constant
+   * strings, which are compared by reference first so the common case costs no character compare.
+   *
+   * @param value The value.
+   */
+  public void set(String value) {
+    if (value == m_lastValue || value.equals(m_lastValue)) {
+      return;
+    }
+    long now = System.nanoTime();
+    if (m_minIntervalNanos > 0 && now - m_lastWrite < m_minIntervalNanos) {
+      return;
+    }
+    m_publisher.set(value);
+    m_lastValue = value;
+    m_lastWrite = now;
+  }
+
+  @Override
+  public void close() {
+    m_publisher.close();
+  }
+}
@@ -0,0 +1,178 @@
+package frc.robot.util;
+
+import edu.wpi.first.util.datalog.DataLog;
+import edu.wpi.first.util.datalog.DoubleArrayLogEntry;
+import edu.wpi.first.wpilibj.RobotController;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Full-rate telemetry to a WPILib {@link DataLog} file, written by a background thread. Callers only
+ * copy their values into a preallocated slot of a bounded queue, so logging costs the robot loop
+ * an array copy and a compare-and-set. If the writer falls behind (e.g. the disk stalls) the queue
+ * fills up and new records are dropped and counted rather than blocking the caller.
+ *
+ * <p>Any number of threads may {@link #append} at once (the queue is a bounded multi-producer
+ * queue with a sequence number per slot). Records are arrays of doubles, one {@link
+ * DoubleArrayLogEntry} per record type.
+ */
+public final class TelemetryLog implements AutoCloseable {
+  private static final int kMaxEntries = 32;
+  private static final long kIdleWaitNanos = 5_000_000L;
+
+  private final DataLog m_log;
+  private final AtomicReferenceArray<DoubleArrayLogEntry> m_entries = new AtomicReferenceArray<>(kMaxEntries);
+  private int m_entryCount;
+
+  // Queue slots. A slot is free for the producer at position p when its sequence is p, and holds a
+  // record for the consumer at position p when its sequence is p + 1.
+  private final int m_mask;
+  private final int m_maxValues;
+  private final AtomicLongArray m_sequences;
+  private final int[] m_slotEntry;
+  private final long[] m_slotTimestamp;
+  private final int[] m_slotCount;
+  private final double[][] m_slotValues;
+  private final AtomicLong m_tail = new AtomicLong();
+  private final AtomicLong m_dropped = new AtomicLong();
+
+  // Only touched by the writer thread: read position and one exact-length array per record length
+  private long m_head;
+  private final double[][] m_scratch;
+
+  private final Thread m_thread;
+  private volatile boolean m_running = true;
+
+  /**
+   * Creates the log and starts its writer thread.
+   *
+   * @param log The log file to write to. Closed along with this.
+   * @param capacity Records the queue holds, rounded up to a power of two.
+   * @param maxValues Most values in one record; longer records are truncated.
+   */
+  public TelemetryLog(DataLog log, int capacity, int maxValues) {
+    m_log = log;
+    int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+    m_mask = size - 1;
+    m_maxValues = maxValues;
+    m_sequences = new AtomicLongArray(size);
+    m_slotEntry = new int[size];
+    m_slotTimestamp = new long[size];
+    m_slotCount = new int[size];
+    m_slotValues = new double[size][maxValues];
+    for (int i = 0; i < size; i++) {
+      m_sequences.set(i, i);
+    }
+    m_scratch = new double[maxValues + 1][];
+    for (int i = 0; i <= maxValues; i++) {
+      m_scratch[i] = new double[i];
+    }
+
+    m_thread = new Thread(this::run, "Telemetry Log");
+    m_thread.setDaemon(true);
+    m_thread.setPriority(Thread.MIN_PRIORITY);
+    m_thread.start();
+  }
+
+  /**
+   * Adds a record type. Call this at startup, not in a loop.
+   *
+   * @param name Entry name in the log, e.g. "vision/pose".
+   * @param metadata What the values are, in order.
+   * @return the entry number to pass to {@link #append}
+   */
+  public synchronized int addEntry(String name, String metadata) {
+    if (m_entryCount == kMaxEntries) {
+      throw new IllegalStateException("Too many telemetry log entries");
+    }
+    m_entries.set(m_entryCount, new DoubleArrayLogEntry(m_log, name, metadata));
+    return m_entryCount++;
+  }
+
+  /**
+   * Queues a record, timestamped now. Never blocks or allocates.
+   *
+   * @param entry Entry number from {@link #addEntry}.
+   * @param values The values; copied, so the caller can reuse the array.
+   * @param count Number of values to log from the start of the array.
+   * @return false if the queue was full and the record was dropped
+   */
+  public boolean append(int entry, double[] values, int count) {
+    long timestamp = RobotController.getFPGATime();
+    int length = Math.min(count, m_maxValues);
+    while (true) {
+      long position = m_tail.get();
+      int index = (int) (position & m_mask);
+      long sequence = m_sequences.get(index);
+      if (sequence == position) {
+        if (m_tail.compareAndSet(position, position + 1)) {
+          m_slotEntry[index] = entry;
+          m_slotTimestamp[index] = timestamp;
+          m_slotCount[index] = length;
+          System.arraycopy(values, 0, m_slotValues[index], 0, length);
+          m_sequences.set(index, position + 1);
+          return true;
+        }
+      } else if (sequence < position) {
+        // The writer hasn't freed this slot yet, the queue is full
+        m_dropped.incrementAndGet();
+        return false;
+      }
+      // Another producer took this position first, try the next one
+    }
+  }
+
+  /** Records dropped because the queue was full. */
+  public long getDroppedRecords() {
+    return m_dropped.get();
+  }
+
+  @Override
+  public void close() {
+    m_running = false;
+    LockSupport.unpark(m_thread);
+    try {
+      m_thread.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    m_log.close();
+  }
+
+  private void run() {
+    while (m_running) {
+      if (!writeNext()) {
+        LockSupport.parkNanos(this, kIdleWaitNanos);
+      }
+    }
+    while (writeNext()) {
+      // Drain what's left before closing
+    }
+  }
+
+  /**
+   * Writes the oldest queued record to the log, if there is one. Runs on the writer thread.
+   *
+   * @return whether a record was written
+   */
+  private boolean writeNext() {
+    int index = (int) (m_head & m_mask);
+    if (m_sequences.get(index) != m_head + 1) {
+      return false;
+    }
+
+    double[] values = m_scratch[m_slotCount[index]];
+    System.arraycopy(m_slotValues[index], 0, values, 0, values.length);
+    DoubleArrayLogEntry entry = m_entries.get(m_slotEntry[index]);
+    long timestamp = m_slotTimestamp[index];
+
+    // Free the slot before the (possibly slow) write
+    m_sequences.set(index, m_head + m_mask + 1);
+    m_head++;
+
+    entry.append(values, timestamp);
+    return true;
+  }
+}
@@ -0,0 +1,326 @@
+package frc.robot.vision;
+
+import edu.wpi.first.math.geometry.Transform3d;
+import edu.wpi.first.wpilibj.DriverStation;
+import frc.robot.CC4HTriangulationImplementation;
+import frc.robot.Constants.VisionConstants;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import org.photonvision.PhotonCamera;
+import org.photonvision.targeting.PhotonPipelineResult;
+
+/**
+ * All of the robot's cameras, each with its own robot-to-camera transform. {@link #update()} fetches
+ * and selects targets for every camera at once on a small fixed pool of worker threads, so the time
+ * it takes is that of the slowest camera rather than the sum; {@link #solve} then merges the tags
+ * from every camera with a new frame captured at about the same time, ranks them together and
+ * fits the best {@link VisionConstants#kMaxTags} in one outlier-rejecting pose solve.
+ *
+ * <p>{@link #update()} and {@link #solve} must be called from a single thread.
+ */
+public class CameraSet implements AutoCloseable {
+  private final CameraWorker[] m_workers;
+  private final ThreadPoolExecutor m_pool;
+  private final AtomicInteger m_pending = new AtomicInteger();
+  private volatile Thread m_waiter;
+
+  // Tags merged from every camera, and the best of them ranked for the solve
+  private final TagCandidates m_candidates = new TagCandidates(VisionConstants.kMaxCandidateTags);
+  private final int[] m_selected = new int[VisionConstants.kMaxCandidateTags];
+  private final TargetSelector m_targetSelector =
+      new TargetSelector(VisionConstants.kMaxCandidateTags, VisionConstants.kSelectionHalfScoreMeters);
+  private final TagCandidates m_tags = new TagCandidates(VisionConstants.kMaxTags);
+  private final CC4HTriangulationImplementation.CC4HTriangulationResult m_triangulationResult =
+      new CC4HTriangulationImplementation.CC4HTriangulationResult();
+  private final RansacPoseEstimator m_ransac =
+      new RansacPoseEstimator(VisionConstants.kRansacBudgetMicros, VisionConstants.kRansacInlierThresholdMeters);
+
+  /** One camera's fetch and target selection, run on a pool thread. */
+  private final class CameraWorker implements Runnable {
+    final FrameSource m_source;
+    final FrameSolver m_frameSolver;
+    final VisionFrameCache m_cache = new VisionFrameCache();
+    final VisionPoseSample m_sample = new VisionPoseSample();
+    PhotonPipelineResult m_result;
+    boolean m_fresh;
+
+    CameraWorker(FrameSource source, FieldLayout fieldLayout, Transform3d robotToCamera) {
+      m_source = source;
+      m_frameSolver = new FrameSolver(fieldLayout, robotToCamera);
+    }
+
+    @Override
+    public void run() {
+      try {
+        process();
+      } finally {
+        if (m_pending.decrementAndGet() == 0) {
+          LockSupport.unpark(m_waiter);
+        }
+      }
+    }
+
+    void process() {
+      try {
+        m_result = m_source.getLatestResult();
+        m_fresh = !m_cache.isCached(m_result);
+        if (m_fresh) {
+          m_frameSolver.selectTargets(m_result, m_sample);
+          m_cache.store(m_result);
+        }
+      } catch (RuntimeException e) {
+        // One bad camera shouldn't take the others (or the vision thread) down with it
+        m_fresh = false;
+        DriverStation.reportError("Vision camera " + m_source.getName() + " failed", e.getStackTrace());
+      }
+    }
+  }
+
+  /**
+   * Creates the camera set.
+   *
+   * @param cameraNames PhotonVision camera names.
+   * @param robotToCameras Pose of each camera relative to the robot, in the same order.
+   * @param fieldLayout Absolute AprilTag positions.
+   */
+  public CameraSet(String[] cameraNames, Transform3d[] robotToCameras, FieldLayout fieldLayout) {
+    this(photonSources(cameraNames), robotToCameras, fieldLayout);
+  }
+
+  /**
+   * Creates the camera set from arbitrary frame sources, e.g. synthetic ones in simulation.
+   *
+   * @param sources Where each camera's frames come from.
+   * @param robotToCameras Pose of each camera relative to the robot, in the same order.
+   * @param fieldLayout Absolute AprilTag positions.
+   */
+  public CameraSet(FrameSource[] sources, Transform3d[] robotToCameras, FieldLayout fieldLayout) {
+    if (sources.length != robotToCameras.length || sources.length == 0) {
+      throw new IllegalArgumentException("Need one robot-to-camera transform per camera");
+    }
+
+    m_workers = new CameraWorker[sources.length];
+    for (int i = 0; i < sources.length; i++) {
+      m_workers[i] = new CameraWorker(sources[i], fieldLayout, robotToCameras[i]);
+    }
+
+    // A single camera is processed inline, there's nothing to overlap
+    if (m_workers.length > 1) {
+      m_pool =
+          new ThreadPoolExecutor(
+              m_workers.length,
+              m_workers.length,
+              0,
+              TimeUnit.SECONDS,
+              new ArrayBlockingQueue<>(m_workers.length),
+              runnable -> {
+                Thread thread = new Thread(runnable, "Vision Camera");
+                thread.setDaemon(true);
+                return thread;
+              });
+      m_pool.prestartAllCoreThreads();
+    } else {
+      m_pool = null;
+    }
+  }
+
+  private static FrameSource[] photonSources(String[] cameraNames) {
+    FrameSource[] sources = new FrameSource[cameraNames.length];
+    for (int i = 0; i < cameraNames.length; i++) {
+      PhotonCamera camera = new PhotonCamera(cameraNames[i]);
+      sources[i] =
+          new FrameSource() {
+            @Override
+            public String getName() {
+              return camera.getName();
+            }
+
+            @Override
+            public PhotonPipelineResult getLatestResult() {
+              return camera.getLatestResult();
+            }
+          };
+    }
+    return sources;
+  }
+
+  /** Number of cameras. */
+  public int size() {
+    return m_workers.length;
+  }
+
+  /** The name of the camera at an index. */
+  public String getName(int index) {
+    return m_workers[index].m_source.getName();
+  }
+
+  /**
+   * Fetches the latest frame from every camera concurrently and selects its targets. Returns once
+   * every camera is done.
+   *
+   * @return the number of cameras that had a frame not seen before
+   */
+  public int update() {
+    if (m_pool == null) {
+      m_workers[0].process();
+    } else {
+      m_waiter = Thread.currentThread();
+      m_pending.set(m_workers.length);
+      for (CameraWorker worker : m_workers) {
+        m_pool.execute(worker);
+      }
+      while (m_pending.get() != 0) {
+        LockSupport.park(this);
+      }
+    }
+
+    int fresh = 0;
+    for (CameraWorker worker : m_workers) {
+      if (worker.m_fresh) {
+        fresh++;
+      }
+    }
+    return fresh;
+  }
+
+  /**
+   * Whether a camera had a new frame in the last {@link #update()}.
+   *
+   * @param index Camera index.
+   * @return true if the camera's frame is new
+   */
+  public boolean isFresh(int index) {
+    return m_workers[index].m_fresh;
+  }
+
+  /**
+   * The frame a camera returned in the last {@link #update()}.
+   *
+   * @param index Camera index.
+   * @return the camera's latest frame
+   */
+  public PhotonPipelineResult getResult(int index) {
+    return m_workers[index].m_result;
+  }
+
+  /**
+   * Merges the tags of every camera with a new frame into one pose solve. Only frames captured
+   * within {@link VisionConstants#kCameraMergeWindowSeconds} of a reference frame are merged, so the
+   * merged tags all show the robot in (nearly) the same place; the others are left out of this
+   * solve. The reference is the newest frame that sees a target (or the newest frame, if none do),
+   * and the sample takes its capture timestamp, latency and best target.
+   *
+   * @param sample Receives the merged result. Every field except the sequence number is overwritten.
+   */
+  public void solve(VisionPoseSample sample) {
+    sample.timestampSeconds = 0.0;
+    sample.latencyMillis = 0.0;
+    sample.hasTargets = false;
+    sample.valid = false;
+
+    CameraWorker reference = null;
+    for (CameraWorker worker : m_workers) {
+      if (worker.m_fresh && (reference == null || isBetterReference(worker.m_sample, reference.m_sample))) {
+        reference = worker;
+      }
+    }
+
+    CameraWorker lastWithTags = null;
+    m_candidates.count = 0;
+    if (reference != null) {
+      VisionPoseSample referenceSample = reference.m_sample;
+      sample.timestampSeconds = referenceSample.timestampSeconds;
+      sample.latencyMillis = referenceSample.latencyMillis;
+      if (referenceSample.hasTargets) {
+        sample.hasTargets = true;
+        sample.bestId = referenceSample.bestId;
+        sample.bestYaw = referenceSample.bestYaw;
+        sample.bestPitch = referenceSample.bestPitch;
+        sample.bestX = referenceSample.bestX;
+        sample.bestY = referenceSample.bestY;
+        sample.bestZ = referenceSample.bestZ;
+      }
+    }
+    for (CameraWorker worker : m_workers) {
+      if (!worker.m_fresh
+          || Math.abs(worker.m_sample.timestampSeconds - sample.timestampSeconds)
+              > VisionConstants.kCameraMergeWindowSeconds) {
+        continue;
+      }
+      if (m_candidates.addAll(worker.m_frameSolver.getCandidates()) > 0) {
+        lastWithTags = worker;
+      }
+    }
+    // Ranked across every camera, so the solve gets the best tags whichever camera saw them
+    int tagCount = m_candidates.selectInto(m_targetSelector, m_selected, m_tags);
+    sample.tagCount = tagCount;
+    sample.rejectedTags = 0;
+
+    if (tagCount >= 2) {
+      // Fits the tags that agree with each other, so one misdetection can't drag the pose off
+      m_ransac.estimate(
+          m_tags.absoluteX, m_tags.absoluteY, m_tags.localX, m_tags.localY, m_tags.ambiguity, tagCount,
+          m_triangulationResult);
+      sample.rejectedTags = tagCount - m_triangulationResult.tagCount;
+
+      // Never hand out (or drive on) a pose from degenerate geometry
+      if (m_triangulationResult.valid) {
+        sample.valid = true;
+        sample.x = m_triangulationResult.x;
+        sample.y = m_triangulationResult.y;
+        sample.theta = m_triangulationResult.theta;
+        sample.residual = m_triangulationResult.residual;
+        sample.confidence = m_triangulationResult.confidence;
+
+        // Only the tags the pose was fit to; a rejected tag says nothing about how far we are
+        double distance = 0.0;
+        int inliers = 0;
+        for (int i = 0; i < tagCount; i++) {
+          if (m_ransac.isInlier(i)) {
+            distance += m_tags.range[i];
+            inliers++;
+          }
+        }
+        sample.meanDistance = distance / inliers;
+      }
+    } else if (tagCount == 1) {
+      lastWithTags.m_frameSolver.solveSingleTag(sample);
+    }
+  }
+
+  /** Whether a frame makes a better merge reference than another: it sees a target, then it's newer. */
+  private static boolean isBetterReference(VisionPoseSample a, VisionPoseSample b) {
+    if (a.hasTargets != b.hasTargets) {
+      return a.hasTargets;
+    }
+    return a.timestampSeconds > b.timestampSeconds;
+  }
+
+  /** Frames skipped across all cameras because they were already solved. */
+  public long getCacheHits() {
+    long hits = 0;
+    for (CameraWorker worker : m_workers) {
+      hits += worker.m_cache.getHits();
+    }
+    return hits;
+  }
+
+  /** Frames solved across all cameras. */
+  public long getCacheMisses() {
+    long misses = 0;
+    for (CameraWorker worker : m_workers) {
+      misses += worker.m_cache.getMisses();
+    }
+    return misses;
+  }
+
+  @Override
+  public void close() {
+    if (m_pool != null) {
+      m_pool.shutdownNow();
+    }
+  }
+}
@@ -0,0 +1,106 @@
+package frc.robot.vision;
+
+import edu.wpi.first.apriltag.AprilTag;
+import edu.wpi.first.apriltag.AprilTagFieldLayout;
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.Filesystem;
+import frc.robot.Constants.VisionConstants;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Absolute AprilTag positions, loaded once at startup and stored in dense primitive arrays indexed by
+ * fiducial ID. Lookups are a bounds check and an array read, so unknown IDs can be rejected before
+ * any solving work is done for them.
+ */
+public final class FieldLayout {
+  private final boolean[] m_known;
+  private final double[] m_x;
+  private final double[] m_y;
+  private final double[] m_z;
+  private final double[] m_yaw;
+
+  /**
+   * Copies the tags out of a WPILib layout. Tags with IDs outside [0, {@link
+   * VisionConstants#kMaxFiducialId}] are ignored.
+   *
+   * @param layout The layout to copy.
+   */
+  public FieldLayout(AprilTagFieldLayout layout) {
+    this();
+    int size = m_known.length;
+    for (AprilTag tag : layout.getTags()) {
+      if (tag.ID < 0 || tag.ID >= size) {
+        DriverStation.reportWarning("Ignoring AprilTag with out of range ID " + tag.ID, false);
+        continue;
+      }
+      m_known[tag.ID] = true;
+      m_x[tag.ID] = tag.pose.getX();
+      m_y[tag.ID] = tag.pose.getY();
+      m_z[tag.ID] = tag.pose.getZ();
+      m_yaw[tag.ID] = tag.pose.getRotation().getZ();
+    }
+  }
+
+  /** Creates a layout without any tags. */
+  private FieldLayout() {
+    int size = VisionConstants.kMaxFiducialId + 1;
+    m_known = new boolean[size];
+    m_x = new double[size];
+    m_y = new double[size];
+    m_z = new double[size];
+    m_yaw = new double[size];
+  }
+
+  /**
+   * Loads a WPILib AprilTag JSON layout from the deploy directory. If the file is missing or
+   * unreadable the error is reported and the layout is empty, so vision produces no poses rather
+   * than poses on a field we aren't playing on.
+   *
+   * @param fileName Name of the layout file, relative to the deploy directory.
+   * @return the loaded layout, or an empty one
+   */
+  public static FieldLayout loadFromDeploy(String fileName) {
+    File file = new File(Filesystem.getDeployDirectory(), fileName);
+    try {
+      return new FieldLayout(new AprilTagFieldLayout(file.getPath()));
+    } catch (IOException e) {
+      DriverStation.reportError(
+          "Could not load field layout " + file + ", vision will produce no poses", e.getStackTrace());
+      return new FieldLayout();
+    }
+  }
+
+  /**
+   * Whether the layout has a position for a fiducial ID.
+   *
+   * @param id The fiducial ID reported by PhotonVision.
+   * @return true if the tag is in the layout
+   */
+  public boolean hasTag(int id) {
+    return id >= 0 && id < m_known.length && m_known[id];
+  }
+
+  /** Absolute x of a tag, in meters. Only valid if {@link #hasTag(int)} is true. */
+  public double getX(int id) {
+    return m_x[id];
+  }
+
+  /** Absolute y of a tag, in meters. Only valid if {@link #hasTag(int)} is true. */
+  public double getY(int id) {
+    return m_y[id];
+  }
+
+  /** Absolute height of a tag, in meters. Only valid if {@link #hasTag(int)} is true. */
+  public double getZ(int id) {
+    return m_z[id];
+  }
+
+  /**
+   * Direction the tag faces (counterclockwise from the absolute +x axis), in radians. Only valid if
+   * {@link #hasTag(int)} is true.
+   */
+  public double getYaw(int id) {
+    return m_yaw[id];
+  }
+}
@@ -0,0 +1,155 @@
+package frc.robot.vision;
+
+import edu.wpi.first.math.geometry.Quaternion;
+import edu.wpi.first.math.geometry.Transform3d;
+import edu.wpi.first.wpilibj.DriverStation;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import org.photonvision.targeting.PhotonPipelineResult;
+import org.photonvision.targeting.PhotonTrackedTarget;
+
+/**
+ * Append-only binary log of raw PhotonVision frames, so bad pose estimates from a match can be
+ * replayed offline with {@link FrameReplay}. The file is preallocated and memory-mapped, so
+ * recording a frame is a handful of buffer writes with no system calls or allocation.
+ *
+ * <p>Layout (big-endian): a header of {@link #kMagic} and {@link #kVersion}, then one record per
+ * frame. A record is its length in bytes (including the length itself), the vision cycle the frame
+ * was solved in (frames of one cycle are merged into one pose), the camera index, the timestamp and
+ * latency, the target count, and per target the fiducial ID, yaw, pitch, area, ambiguity and the
+ * best camera-to-target translation and rotation quaternion. The length is written last, so a
+ * record cut short by a power loss reads as the end of the log.
+ *
+ * <p>Written frames reach the disk whenever the OS gets to them; {@link #force} makes sure they
+ * have, e.g. when the robot is disabled.
+ */
+public class FrameRecorder implements AutoCloseable {
+  static final int kMagic = 0x43433448; // "CC4H"
+  static final int kVersion = 3;
+  static final int kHeaderBytes = 8;
+  static final int kFrameBytes = 4 + 8 + 4 + 8 + 8 + 4;
+  static final int kTargetBytes = 4 + 11 * 8;
+  // LogDirectory recognizes frame logs by this name
+  static final String kFilePrefix = "frames-";
+  static final String kFileSuffix = ".bin";
+
+  private final FileChannel m_channel;
+  private final MappedByteBuffer m_buffer;
+  private long m_recordedFrames;
+  private long m_droppedFrames;
+
+  /**
+   * Creates (or overwrites) a log file of a fixed size.
+   *
+   * @param file The log file.
+   * @param capacityBytes Size of the file. Frames that don't fit are dropped and counted.
+   * @throws IOException if the file can't be created or mapped
+   */
+  public FrameRecorder(Path file, int capacityBytes) throws IOException {
+    Files.createDirectories(file.toAbsolutePath().getParent());
+    m_channel =
+        FileChannel.open(
+            file,
+            StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING,
+            StandardOpenOption.READ,
+            StandardOpenOption.WRITE);
+    m_buffer = m_channel.map(FileChannel.MapMode.READ_WRITE, 0, capacityBytes);
+    m_buffer.putInt(kMagic);
+    m_buffer.putInt(kVersion);
+  }
+
+  /**
+   * Appends a frame. Must only be called from one thread.
+   *
+   * @param cycle Sequence number of the vision cycle that solves this frame, shared by every camera
+   *     frame merged into the same pose.
+   * @param cameraIndex Index of the camera in {@link
+   *     frc.robot.Constants.VisionConstants#kCameraNames}.
+   * @param result The frame to record.
+   */
+  public void record(long cycle, int cameraIndex, PhotonPipelineResult result) {
+    List<PhotonTrackedTarget> targets = result.getTargets();
+    int targetCount = targets.size();
+    int length = kFrameBytes + targetCount * kTargetBytes;
+
+    // Keep room for the zero length that marks the end of the log
+    if (m_buffer.remaining() < length + 4) {
+      m_droppedFrames++;
+      return;
+    }
+
+    int start = m_buffer.position();
+    m_buffer.position(start + 4);
+    m_buffer.putLong(cycle);
+    m_buffer.putInt(cameraIndex);
+    m_buffer.putDouble(result.getTimestampSeconds());
+    m_buffer.putDouble(result.getLatencyMillis());
+    m_buffer.putInt(targetCount);
+    for (int i = 0; i < targetCount; i++) {
+      PhotonTrackedTarget target = targets.get(i);
+      Transform3d cameraToTarget = target.getBestCameraToTarget();
+      Quaternion rotation = cameraToTarget.getRotation().getQuaternion();
+      m_buffer.putInt(target.getFiducialId());
+      m_buffer.putDouble(target.getYaw());
+      m_buffer.putDouble(target.getPitch());
+      m_buffer.putDouble(target.getArea());
+      m_buffer.putDouble(target.getPoseAmbiguity());
+      m_buffer.putDouble(cameraToTarget.getX());
+      m_buffer.putDouble(cameraToTarget.getY());
+      m_buffer.putDouble(cameraToTarget.getZ());
+      m_buffer.putDouble(rotation.getW());
+      m_buffer.putDouble(rotation.getX());
+      m_buffer.putDouble(rotation.getY());
+      m_buffer.putDouble(rotation.getZ());
+    }
+    m_buffer.putInt(start, length);
+    m_recordedFrames++;
+  }
+
+  /**
+   * Writes the frames recorded so far to the disk. Safe to call from any thread while frames are
+   * being recorded; a record still being written is ignored on replay.
+   */
+  public void force() {
+    m_buffer.force();
+  }
+
+  /** Frames written so far. */
+  public long getRecordedFrames() {
+    return m_recordedFrames;
+  }
+
+  /** Frames dropped because the file was full. */
+  public long getDroppedFrames() {
+    return m_droppedFrames;
+  }
+
+  /**
+   * Opens a new log named after the current time. Old logs are left alone; see {@link
+   * frc.robot.util.LogDirectory#makeRoom}.
+   *
+   * @param directory Directory holding the logs.
+   * @param capacityBytes Size of the new log.
+   * @throws IOException if the log can't be created or mapped
+   */
+  public static FrameRecorder create(Path directory, int capacityBytes) throws IOException {
+    return new FrameRecorder(
+        directory.resolve(kFilePrefix + System.currentTimeMillis() + kFileSuffix), capacityBytes);
+  }
+
+  @Override
+  public void close() {
+    m_buffer.force();
+    try {
+      m_channel.close();
+    } catch (IOException e) {
+      DriverStation.reportError("Could not close frame log", e.getStackTrace());
+    }
+  }
+}
@@ -0,0 +1,218 @@
+package frc.robot.vision;
+
+import edu.wpi.first.apriltag.AprilTagFieldLayout;
+import edu.wpi.first.math.geometry.Quaternion;
+import edu.wpi.first.math.geometry.Rotation3d;
+import edu.wpi.first.math.geometry.Transform3d;
+import edu.wpi.first.math.geometry.Translation3d;
+import frc.robot.Constants.VisionConstants;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import org.photonvision.targeting.PhotonPipelineResult;
+import org.photonvision.targeting.PhotonTrackedTarget;
+import org.photonvision.targeting.TargetCorner;
+
+/**
+ * Desktop tool that replays a {@link FrameRecorder} log through the same {@link CameraSet} solve the
+ * robot uses, as fast as the CPU allows. The frames of each recorded vision cycle are handed to the
+ * camera set together, so tags are merged across cameras and outliers rejected exactly as they were
+ * on the robot. Prints the throughput and writes the reproduced pose trace as CSV.
+ *
+ * <p>Usage: {@code ./gradlew replayFrames --args="<log> <field layout json> [trace csv]"}
+ */
+public final class FrameReplay {
+  private static final int kPasses = 20;
+
+  /** One frame read back from a log. */
+  public static final class RecordedFrame {
+    public final long cycle;
+    public final int cameraIndex;
+    public final PhotonPipelineResult result;
+
+    RecordedFrame(long cycle, int cameraIndex, PhotonPipelineResult result) {
+      this.cycle = cycle;
+      this.cameraIndex = cameraIndex;
+      this.result = result;
+    }
+  }
+
+  /** Hands the camera set whatever frame the current cycle has for one camera. */
+  private static final class ReplaySource implements FrameSource {
+    private final String m_name;
+    private PhotonPipelineResult m_frame = new PhotonPipelineResult();
+
+    ReplaySource(String name) {
+      m_name = name;
+    }
+
+    @Override
+    public String getName() {
+      return m_name;
+    }
+
+    @Override
+    public PhotonPipelineResult getLatestResult() {
+      return m_frame;
+    }
+  }
+
+  private FrameReplay() {
+    throw new UnsupportedOperationException("This is a utility class!");
+  }
+
+  /**
+   * Reads every frame from a log.
+   *
+   * @param file The log file.
+   * @return the frames, in recorded order
+   * @throws IOException if the file can't be read or isn't a frame log
+   */
+  public static List<RecordedFrame> readLog(Path file) throws IOException {
+    ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file));
+    if (buffer.remaining() < FrameRecorder.kHeaderBytes || buffer.getInt() != FrameRecorder.kMagic) {
+      throw new IOException(file + " is not a frame log");
+    }
+    int version = buffer.getInt();
+    if (version != FrameRecorder.kVersion) {
+      throw new IOException(file + " is a version " + version + " frame log, expected " + FrameRecorder.kVersion);
+    }
+
+    List<TargetCorner> noCorners = List.of();
+    List<RecordedFrame> frames = new ArrayList<>();
+    while (buffer.remaining() >= 4) {
+      int start = buffer.position();
+      int length = buffer.getInt();
+      if (length < FrameRecorder.kFrameBytes || start + length > buffer.limit()) {
+        break;
+      }
+
+      long cycle = buffer.getLong();
+      int cameraIndex = buffer.getInt();
+      double timestamp = buffer.getDouble();
+      double latency = buffer.getDouble();
+      int targetCount = buffer.getInt();
+      List<PhotonTrackedTarget> targets = new ArrayList<>(targetCount);
+      for (int i = 0; i < targetCount; i++) {
+        int id = buffer.getInt();
+        double yaw = buffer.getDouble();
+        double pitch = buffer.getDouble();
+        double area = buffer.getDouble();
+        double ambiguity = buffer.getDouble();
+        Translation3d translation =
+            new Translation3d(buffer.getDouble(), buffer.getDouble(), buffer.getDouble());
+        Rotation3d rotation =
+            new Rotation3d(
+                new Quaternion(
+                    buffer.getDouble(), buffer.getDouble(), buffer.getDouble(), buffer.getDouble()));
+        Transform3d cameraToTarget = new Transform3d(translation, rotation);
+        targets.add(
+            new PhotonTrackedTarget(
+                yaw, pitch, area, 0.0, id, cameraToTarget, cameraToTarget, ambiguity, noCorners,
+                noCorners));
+      }
+
+      PhotonPipelineResult frame = new PhotonPipelineResult(latency, targets);
+      frame.setTimestampSeconds(timestamp);
+      frames.add(new RecordedFrame(cycle, cameraIndex, frame));
+      buffer.position(start + length);
+    }
+    return frames;
+  }
+
+  public static void main(String... args) throws IOException {
+    if (args.length < 2) {
+      System.err.println("Usage: FrameReplay <log> <field layout json> [trace csv]");
+      System.exit(1);
+    }
+
+    List<RecordedFrame> frames = readLog(Paths.get(args[0]));
+    FieldLayout fieldLayout = new FieldLayout(new AprilTagFieldLayout(args[1]));
+    System.out.println("Read " + frames.size() + " frames from " + args[0]);
+    if (frames.isEmpty()) {
+      return;
+    }
+
+    // One source per camera on the robot, each at its own mounting position
+    ReplaySource[] sources = new ReplaySource[VisionConstants.kRobotToCameras.length];
+    for (int i = 0; i < sources.length; i++) {
+      String name = i < VisionConstants.kCameraNames.length ? VisionConstants.kCameraNames[i] : "Camera " + i;
+      sources[i] = new ReplaySource(name);
+    }
+
+    try (CameraSet cameras = new CameraSet(sources, VisionConstants.kRobotToCameras, fieldLayout)) {
+      // The sources start out with empty frames; take them in so the first cycle only sees real ones
+      cameras.update();
+      VisionPoseSample sample = new VisionPoseSample();
+
+      // The first pass warms up the JIT and produces the trace, the rest are timed
+      PrintWriter trace = args.length > 2 ? new PrintWriter(Files.newBufferedWriter(Paths.get(args[2]))) : null;
+      if (trace != null) {
+        trace.println("cycle,timestamp,tags,rejected,valid,x,y,theta,residual");
+      }
+      int cycles = 0;
+      int validCycles = 0;
+      int next = 0;
+      while (next < frames.size()) {
+        long cycle = frames.get(next).cycle;
+        next = replayCycle(frames, next, sources, cameras, sample);
+        cycles++;
+        if (sample.valid) {
+          validCycles++;
+        }
+        if (trace != null) {
+          trace.printf(
+              "%d,%.6f,%d,%d,%b,%.4f,%.4f,%.4f,%.4f%n",
+              cycle, sample.timestampSeconds, sample.tagCount, sample.rejectedTags, sample.valid, sample.x, sample.y,
+              sample.theta, sample.residual);
+        }
+      }
+      if (trace != null) {
+        trace.close();
+        System.out.println("Wrote pose trace to " + args[2]);
+      }
+
+      long start = System.nanoTime();
+      for (int pass = 0; pass < kPasses; pass++) {
+        next = 0;
+        while (next < frames.size()) {
+          next = replayCycle(frames, next, sources, cameras, sample);
+        }
+      }
+      long elapsed = System.nanoTime() - start;
+      long solved = (long) kPasses * cycles;
+
+      System.out.printf(
+          "%d/%d cycles produced a pose; %.0f cycles/s, %.1f ns/cycle%n",
+          validCycles, cycles, solved * 1e9 / elapsed, (double) elapsed / solved);
+    }
+  }
+
+  /**
+   * Hands the frames of one vision cycle to their cameras and solves them together, as the vision
+   * thread did.
+   *
+   * @return the index of the first frame of the next cycle
+   */
+  private static int replayCycle(
+      List<RecordedFrame> frames, int first, ReplaySource[] sources, CameraSet cameras, VisionPoseSample sample) {
+    long cycle = frames.get(first).cycle;
+    int next = first;
+    while (next < frames.size() && frames.get(next).cycle == cycle) {
+      RecordedFrame frame = frames.get(next);
+      // Frames from cameras that are no longer configured can't be placed on the robot
+      if (frame.cameraIndex >= 0 && frame.cameraIndex < sources.length) {
+        sources[frame.cameraIndex].m_frame = frame.result;
+      }
+      next++;
+    }
+    cameras.update();
+    cameras.solve(sample);
+    return next;
+  }
+}
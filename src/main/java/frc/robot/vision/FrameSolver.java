@@ -0,0 +1,316 @@
+package frc.robot.vision;
+
+import edu.wpi.first.math.geometry.Transform3d;
+import frc.robot.CC4HTriangulationImplementation;
+import frc.robot.Constants.VisionConstants;
+import java.util.List;
+import org.photonvision.targeting.PhotonPipelineResult;
+import org.photonvision.targeting.PhotonTrackedTarget;
+
+/**
+ * Turns one PhotonVision frame into a {@link VisionPoseSample}: field layout lookup, local tag
+ * positions and the least-squares solve. Holds its own scratch arrays, so it allocates nothing per
+ * frame but must only be used from one thread at a time.
+ *
+ * <p>Local tag positions are relative to the robot (x right, y forward), using the camera's
+ * robot-to-camera transform, so the tags of several cameras can be merged into one solve.
+ */
+public class FrameSolver {
+  private final FieldLayout m_fieldLayout;
+
+  // Camera position (x right, y forward) and yaw (clockwise) relative to the robot
+  private final double m_cameraX;
+  private final double m_cameraY;
+  private final double m_cameraCos;
+  private final double m_cameraSin;
+  private final double m_cameraYaw;
+
+  // The least ambiguous tag of the frame, for the single-tag solve. Its local position comes straight
+  // from the camera-to-target translation, and the yaws are counterclockwise from +x.
+  private double m_singleAbsoluteX;
+  private double m_singleAbsoluteY;
+  private double m_singleAbsoluteYaw;
+  private double m_singleLocalX;
+  private double m_singleLocalY;
+  private double m_singleLocalYaw;
+  private double m_singleAmbiguity;
+  private double m_singleRange;
+
+  // Every tag of the frame with a known position, before ranking
+  private final TagObservation[] m_observations = new TagObservation[VisionConstants.kMaxCandidateTags];
+  private final TagCandidates m_candidates = new TagCandidates(VisionConstants.kMaxCandidateTags);
+  private final int[] m_selected = new int[VisionConstants.kMaxCandidateTags];
+  private final TargetSelector m_targetSelector =
+      new TargetSelector(VisionConstants.kMaxCandidateTags, VisionConstants.kSelectionHalfScoreMeters);
+
+  // The tags of the least-squares solve, best-conditioned pair first
+  private final TagCandidates m_tags = new TagCandidates(VisionConstants.kMaxTags);
+  private final CC4HTriangulationImplementation.CC4HTriangulationResult m_triangulationResult =
+      new CC4HTriangulationImplementation.CC4HTriangulationResult();
+
+  /**
+   * Creates a solver for a camera at the robot's origin, facing forward.
+   *
+   * @param fieldLayout Absolute AprilTag positions.
+   */
+  public FrameSolver(FieldLayout fieldLayout) {
+    this(fieldLayout, new Transform3d());
+  }
+
+  /**
+   * Creates the solver.
+   *
+   * @param fieldLayout Absolute AprilTag positions.
+   * @param robotToCamera Camera pose relative to the robot, in WPILib coordinates (x forward, y
+   *     left, counterclockwise yaw).
+   */
+  public FrameSolver(FieldLayout fieldLayout, Transform3d robotToCamera) {
+    m_fieldLayout = fieldLayout;
+    m_cameraX = -robotToCamera.getY();
+    m_cameraY = robotToCamera.getX();
+    double cameraYaw = -robotToCamera.getRotation().getZ();
+    m_cameraCos = Math.cos(cameraYaw);
+    m_cameraSin = Math.sin(cameraYaw);
+    m_cameraYaw = robotToCamera.getRotation().getZ();
+    for (int i = 0; i < m_observations.length; i++) {
+      m_observations[i] = new TagObservation();
+    }
+  }
+
+  /**
+   * Solves a frame. Every field of the sample except the sequence number is overwritten.
+   *
+   * @param result The frame to solve.
+   * @param sample Receives the solved pose.
+   */
+  public void solve(PhotonPipelineResult result, VisionPoseSample sample) {
+    selectTargets(result, sample);
+    solveSelected(sample);
+  }
+
+  /**
+   * First half of {@link #solve}: reads the frame's metadata and best target into the sample and
+   * collects the tags with known positions. They are ranked only when solved, by {@link
+   * #solveSelected} or, merged with other cameras' tags, by {@link CameraSet}.
+   *
+   * @param result The frame to solve.
+   * @param sample Receives the frame metadata; tagCount is the number of tags collected.
+   */
+  public void selectTargets(PhotonPipelineResult result, VisionPoseSample sample) {
+    sample.timestampSeconds = result.getTimestampSeconds();
+    sample.latencyMillis = result.getLatencyMillis();
+    sample.hasTargets = result.hasTargets();
+    sample.valid = false;
+    sample.tagCount = 0;
+    m_candidates.count = 0;
+
+    if (result.hasTargets()) {
+      PhotonTrackedTarget bestTarget = result.getBestTarget();
+      sample.bestId = bestTarget.getFiducialId();
+      Transform3d bestCameraToTarget = bestTarget.getBestCameraToTarget();
+      sample.bestYaw = toRobotYawDegrees(bestTarget.getYaw(), bestCameraToTarget);
+      sample.bestPitch = bestTarget.getPitch();
+      sample.bestX = bestCameraToTarget.getX();
+      sample.bestY = bestCameraToTarget.getY();
+      sample.bestZ = bestCameraToTarget.getZ();
+
+      // Get the list of tracked targets by Photonvision
+      List<PhotonTrackedTarget> targets = result.getTargets();
+
+      // Two or more tags are triangulated; a lone tag falls back to the single-tag solve
+      TagCandidates candidates = m_candidates;
+      int count = 0;
+      for (int i = 0; i < targets.size() && count < VisionConstants.kMaxCandidateTags; i++) {
+        PhotonTrackedTarget target = targets.get(i);
+        int id = target.getFiducialId();
+
+        // Tags we don't have a position for are useless for triangulation, skip them before doing any work
+        if (!m_fieldLayout.hasTag(id)) {
+          continue;
+        }
+
+        // Every trig function the solvers need is computed here, once per target
+        TagObservation observation = m_observations[count];
+        observation.set(target);
+
+        candidates.absoluteX[count] = m_fieldLayout.getX(id);
+        candidates.absoluteY[count] = m_fieldLayout.getY(id);
+        candidates.localX[count] = toLocalX(observation);
+        candidates.localY[count] = toLocalY(observation);
+        candidates.ambiguity[count] = observation.ambiguity;
+        candidates.area[count] = observation.area;
+        candidates.range[count] = observation.range;
+        // The bearing turned by the camera's mounting yaw: the angle sum identities, no trig calls
+        candidates.sinBearing[count] = observation.sinBearing * m_cameraCos + observation.cosBearing * m_cameraSin;
+        candidates.cosBearing[count] = observation.cosBearing * m_cameraCos - observation.sinBearing * m_cameraSin;
+
+        if (count == 0 || isLessAmbiguous(observation.ambiguity, m_singleAmbiguity)) {
+          selectSingleTag(observation, candidates.localX[count], candidates.localY[count]);
+        }
+        count++;
+      }
+
+      candidates.count = count;
+      sample.tagCount = count;
+    }
+  }
+
+  /** The tags collected by the last {@link #selectTargets}, unranked. */
+  TagCandidates getCandidates() {
+    return m_candidates;
+  }
+
+  /** Whether ambiguity a beats b, treating a negative (unknown) ambiguity as the worst. */
+  private static boolean isLessAmbiguous(double a, double b) {
+    return a >= 0 && (b < 0 || a < b);
+  }
+
+  /** Robot-relative x (right) of an observed tag. */
+  private double toLocalX(TagObservation observation) {
+    return m_cameraX + observation.getRight() * m_cameraCos + observation.getForward() * m_cameraSin;
+  }
+
+  /** Robot-relative y (forward) of an observed tag. */
+  private double toLocalY(TagObservation observation) {
+    return m_cameraY - observation.getRight() * m_cameraSin + observation.getForward() * m_cameraCos;
+  }
+
+  /**
+   * Converts a target's camera-relative yaw to the robot's: the angle the robot has to turn to face
+   * it, in degrees (positive right) like PhotonVision's. Uses the target's position, so the camera's
+   * offset from the robot's center counts too, if the pipeline solved one; otherwise only the
+   * camera's mounting yaw.
+   *
+   * @param cameraYawDegrees The target's yaw as PhotonVision reports it.
+   * @param cameraToTarget The target's camera-relative position, zero if the pipeline has none.
+   */
+  private double toRobotYawDegrees(double cameraYawDegrees, Transform3d cameraToTarget) {
+    double forward = cameraToTarget.getX();
+    double right = -cameraToTarget.getY();
+    if (forward == 0.0 && right == 0.0) {
+      return cameraYawDegrees - Math.toDegrees(m_cameraYaw);
+    }
+    double localX = m_cameraX + right * m_cameraCos + forward * m_cameraSin;
+    double localY = m_cameraY - right * m_cameraSin + forward * m_cameraCos;
+    return Math.toDegrees(Math.atan2(localX, localY));
+  }
+
+  /**
+   * Keeps a tag for the single-tag solve.
+   *
+   * @param observation The tag, with a known field position.
+   * @param localX Robot-relative x of the tag.
+   * @param localY Robot-relative y of the tag.
+   */
+  private void selectSingleTag(TagObservation observation, double localX, double localY) {
+    m_singleAbsoluteX = m_fieldLayout.getX(observation.id);
+    m_singleAbsoluteY = m_fieldLayout.getY(observation.id);
+    m_singleAbsoluteYaw = m_fieldLayout.getYaw(observation.id);
+    m_singleLocalX = localX;
+    m_singleLocalY = localY;
+    // The tag's yaw relative to the camera is counterclockwise from forward, local angles start at right
+    m_singleLocalYaw = m_cameraYaw + observation.tagYaw + Math.PI / 2;
+    m_singleAmbiguity = observation.ambiguity;
+    m_singleRange = observation.range;
+  }
+
+  /**
+   * Solves the pose from the least ambiguous tag collected by the last {@link #selectTargets}. Used
+   * when a frame (or all cameras together) saw only one tag.
+   *
+   * @param sample Receives the solved pose and its confidence, if the tag was unambiguous enough.
+   */
+  public void solveSingleTag(VisionPoseSample sample) {
+    CC4HTriangulationImplementation.solveSingleTag(
+        m_singleAbsoluteX,
+        m_singleAbsoluteY,
+        m_singleAbsoluteYaw,
+        m_singleLocalX,
+        m_singleLocalY,
+        m_singleLocalYaw,
+        m_singleAmbiguity,
+        VisionConstants.kMaxSingleTagAmbiguity,
+        VisionConstants.kSingleTagHalfConfidenceMeters,
+        m_triangulationResult);
+    if (copyResult(sample)) {
+      sample.meanDistance = m_singleRange;
+    }
+  }
+
+  /**
+   * Copies the last triangulation result into the sample, if it's valid.
+   *
+   * @return whether the sample now holds a pose
+   */
+  private boolean copyResult(VisionPoseSample sample) {
+    // Never hand out (or drive on) a pose from degenerate geometry
+    if (!m_triangulationResult.valid) {
+      return false;
+    }
+    sample.valid = true;
+    sample.x = m_triangulationResult.x;
+    sample.y = m_triangulationResult.y;
+    sample.theta = m_triangulationResult.theta;
+    sample.residual = m_triangulationResult.residual;
+    sample.confidence = m_triangulationResult.confidence;
+    return true;
+  }
+
+  /**
+   * Copies the tags ranked by the last {@link #solveSelected} into merge arrays.
+   *
+   * @param absoluteX Receives the absolute tag x positions.
+   * @param absoluteY Receives the absolute tag y positions.
+   * @param localX Receives the robot-relative tag x positions.
+   * @param localY Receives the robot-relative tag y positions.
+   * @param ambiguity Receives the tags' pose ambiguities.
+   * @param range Receives the camera-to-tag distances.
+   * @param offset First index to write to.
+   * @param count Number of tags solved (the sample's tagCount).
+   * @return the number of tags copied, limited by the space left in the arrays
+   */
+  public int copySelected(
+      double[] absoluteX,
+      double[] absoluteY,
+      double[] localX,
+      double[] localY,
+      double[] ambiguity,
+      double[] range,
+      int offset,
+      int count) {
+    int copied = Math.min(count, absoluteX.length - offset);
+    System.arraycopy(m_tags.absoluteX, 0, absoluteX, offset, copied);
+    System.arraycopy(m_tags.absoluteY, 0, absoluteY, offset, copied);
+    System.arraycopy(m_tags.localX, 0, localX, offset, copied);
+    System.arraycopy(m_tags.localY, 0, localY, offset, copied);
+    System.arraycopy(m_tags.ambiguity, 0, ambiguity, offset, copied);
+    System.arraycopy(m_tags.range, 0, range, offset, copied);
+    return copied;
+  }
+
+  /**
+   * Second half of {@link #solve}: ranks the tags collected by {@link #selectTargets} and solves the
+   * best {@link VisionConstants#kMaxTags} of them. PhotonVision's list order says nothing about
+   * geometry, so the tags are ranked rather than taken in order.
+   *
+   * @param sample Receives the solved pose, if there were enough tags and the geometry was usable;
+   *     tagCount becomes the number of tags solved.
+   */
+  public void solveSelected(VisionPoseSample sample) {
+    int tagCount = m_candidates.selectInto(m_targetSelector, m_selected, m_tags);
+    sample.tagCount = tagCount;
+    if (tagCount >= 2) {
+      CC4HTriangulationImplementation.solveLeastSquares(
+          m_tags.absoluteX, m_tags.absoluteY, m_tags.localX, m_tags.localY, tagCount, m_triangulationResult);
+      if (copyResult(sample)) {
+        double distance = 0.0;
+        for (int i = 0; i < tagCount; i++) {
+          distance += m_tags.range[i];
+        }
+        sample.meanDistance = distance / tagCount;
+      }
+    } else if (tagCount == 1) {
+      solveSingleTag(sample);
+    }
+  }
+}
@@ -0,0 +1,15 @@
+package frc.robot.vision;
+
+import org.photonvision.targeting.PhotonPipelineResult;
+
+/**
+ * Where a {@link CameraSet} gets its frames: a PhotonVision camera on the robot, or a {@link
+ * SyntheticFrameSource} in simulation.
+ */
+public interface FrameSource {
+  /** The camera's name, as PhotonVision publishes it under photonvision/. */
+  String getName();
+
+  /** The newest frame. May return the same frame more than once. */
+  PhotonPipelineResult getLatestResult();
+}
@@ -0,0 +1,75 @@
+package frc.robot.vision;
+
+import java.lang.invoke.VarHandle;
+
+/**
+ * The newest target yaw from the vision thread, readable from any number of threads without locks.
+ * {@link PoseHandoff} only supports one reader (the main loop), so fast control loops read this
+ * instead. It's a sequence lock: the writer makes the counter odd while it writes, and readers retry
+ * if the counter was odd or changed under them.
+ */
+public final class LatestTarget {
+  /** A copy of the latest target, owned by the reader. */
+  public static final class Reading {
+    /** Sequence number of the frame this came from, 0 before the first frame. */
+    public long frame;
+
+    /** Time the image was captured, in FPGA seconds. */
+    public double timestampSeconds;
+
+    public boolean hasTarget;
+
+    /** Yaw from the robot's heading to the best target, in degrees (positive right). */
+    public double yawDegrees;
+  }
+
+  private volatile int m_version;
+
+  private long m_frame;
+  private double m_timestampSeconds;
+  private boolean m_hasTarget;
+  private double m_yawDegrees;
+
+  /**
+   * Publishes a new target. Only the vision thread may call this.
+   *
+   * @param frame Sequence number of the frame.
+   * @param timestampSeconds Capture time, in FPGA seconds.
+   * @param hasTarget Whether the frame saw a target at all.
+   * @param yawDegrees Yaw of the best target, in degrees.
+   */
+  public void write(long frame, double timestampSeconds, boolean hasTarget, double yawDegrees) {
+    int version = m_version;
+    m_version = version + 1;
+    // Keep the field writes below from moving ahead of the odd version
+    VarHandle.storeStoreFence();
+    m_frame = frame;
+    m_timestampSeconds = timestampSeconds;
+    m_hasTarget = hasTarget;
+    m_yawDegrees = yawDegrees;
+    m_version = version + 2;
+  }
+
+  /**
+   * Copies the latest target. Spins (briefly) only if it races the writer.
+   *
+   * @param out Where to copy the target.
+   */
+  public void read(Reading out) {
+    while (true) {
+      int version = m_version;
+      if ((version & 1) == 0) {
+        out.frame = m_frame;
+        out.timestampSeconds = m_timestampSeconds;
+        out.hasTarget = m_hasTarget;
+        out.yawDegrees = m_yawDegrees;
+        // Keep the field reads above from moving past the version check
+        VarHandle.loadLoadFence();
+        if (m_version == version) {
+          return;
+        }
+      }
+      Thread.onSpinWait();
+    }
+  }
+}
@@ -0,0 +1,65 @@
+package frc.robot.vision;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Lock-free, single-writer/single-reader handoff of the newest {@link VisionPoseSample}, built as a
+ * triple buffer. The writer fills its private buffer and swaps it into the shared slot; the reader
+ * swaps the shared slot out only when it holds something new. Neither side ever blocks or
+ * allocates, and the reader always sees a complete sample.
+ */
+public final class PoseHandoff {
+  private static final int kIndexMask = 3;
+  private static final int kFreshBit = 4;
+
+  private final VisionPoseSample[] m_buffers = {
+    new VisionPoseSample(), new VisionPoseSample(), new VisionPoseSample()
+  };
+
+  // Index of the shared buffer, plus kFreshBit when the reader hasn't picked it up yet
+  private final AtomicInteger m_shared = new AtomicInteger(0);
+
+  // Owned by the writer thread
+  private int m_writeIndex = 1;
+
+  // Owned by the reader thread
+  private int m_readIndex = 2;
+
+  /**
+   * Writer side: the buffer to fill before calling {@link #publish()}. Its contents are whatever
+   * was there last time, not the previous sample.
+   *
+   * @return the writer's private buffer
+   */
+  public VisionPoseSample beginWrite() {
+    return m_buffers[m_writeIndex];
+  }
+
+  /** Writer side: makes the buffer from {@link #beginWrite()} the newest sample. */
+  public void publish() {
+    m_writeIndex = m_shared.getAndSet(m_writeIndex | kFreshBit) & kIndexMask;
+  }
+
+  /**
+   * Reader side: picks up the newest sample if one was published since the last call.
+   *
+   * @return true if {@link #get()} now returns a new sample
+   */
+  public boolean update() {
+    if ((m_shared.get() & kFreshBit) == 0) {
+      return false;
+    }
+    m_readIndex = m_shared.getAndSet(m_readIndex) & kIndexMask;
+    return true;
+  }
+
+  /**
+   * Reader side: the sample picked up by the last successful {@link #update()}. Only valid until the
+   * next call to {@link #update()}.
+   *
+   * @return the reader's current sample
+   */
+  public VisionPoseSample get() {
+    return m_buffers[m_readIndex];
+  }
+}
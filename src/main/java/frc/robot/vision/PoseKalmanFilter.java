@@ -0,0 +1,220 @@
+package frc.robot.vision;
+
+import frc.robot.Constants.VisionConstants;
+
+/**
+ * Extended Kalman filter over the robot pose (x, y, heading), fusing drivetrain odometry
+ * predictions with vision corrections. The 3x3 math is written out by hand on primitive fields, so
+ * predict and update cost a few dozen multiplies and allocate nothing (WPILib's Matrix-based
+ * estimators allocate on every operation).
+ *
+ * <p>Uses the triangulation convention: x right, y forward, theta clockwise from +y. The heading
+ * is kept wrapped to [-pi, pi], however far the robot turns.
+ */
+public class PoseKalmanFilter {
+  private boolean m_initialized;
+
+  private double m_x;
+  private double m_y;
+  private double m_theta;
+
+  // Symmetric covariance, upper triangle
+  private double m_p00;
+  private double m_p01;
+  private double m_p02;
+  private double m_p11;
+  private double m_p12;
+  private double m_p22;
+
+  private final double m_positionNoisePerMeter;
+  private final double m_headingNoisePerMeter;
+
+  /**
+   * Creates the filter. It stays uninitialized until the first vision update.
+   *
+   * @param positionNoisePerMeter Odometry position standard deviation per meter driven.
+   * @param headingNoisePerMeter Odometry heading standard deviation (radians) per meter driven.
+   */
+  public PoseKalmanFilter(double positionNoisePerMeter, double headingNoisePerMeter) {
+    m_positionNoisePerMeter = positionNoisePerMeter;
+    m_headingNoisePerMeter = headingNoisePerMeter;
+  }
+
+  /**
+   * Moves the estimate by an odometry step and grows the uncertainty accordingly.
+   *
+   * @param forward Distance driven forward, in meters.
+   * @param left Distance driven to the left, in meters (0 for a differential drive).
+   * @param headingChange Counterclockwise heading change, in radians (as odometry reports it).
+   */
+  public void predict(double forward, double left, double headingChange) {
+    if (!m_initialized) {
+      return;
+    }
+
+    double sin = Math.sin(m_theta);
+    double cos = Math.cos(m_theta);
+    m_x += forward * sin - left * cos;
+    m_y += forward * cos + left * sin;
+    m_theta = Math.IEEEremainder(m_theta - headingChange, 2 * Math.PI);
+
+    // Jacobian of the motion with respect to theta; x and y don't depend on each other
+    double f02 = forward * cos + left * sin;
+    double f12 = -forward * sin + left * cos;
+
+    // P = F P F^T
+    double p00 = m_p00 + 2 * f02 * m_p02 + f02 * f02 * m_p22;
+    double p01 = m_p01 + f12 * m_p02 + f02 * m_p12 + f02 * f12 * m_p22;
+    double p02 = m_p02 + f02 * m_p22;
+    double p11 = m_p11 + 2 * f12 * m_p12 + f12 * f12 * m_p22;
+    double p12 = m_p12 + f12 * m_p22;
+
+    // + Q, proportional to the distance driven
+    double distance = Math.hypot(forward, left) + Math.abs(headingChange) * 0.5;
+    double positionNoise = m_positionNoisePerMeter * distance;
+    double headingNoise = m_headingNoisePerMeter * distance;
+    m_p00 = p00 + positionNoise * positionNoise;
+    m_p01 = p01;
+    m_p02 = p02;
+    m_p11 = p11 + positionNoise * positionNoise;
+    m_p12 = p12;
+    m_p22 += headingNoise * headingNoise;
+  }
+
+  /**
+   * Corrects the estimate with a vision pose. The measurement must already be moved to the current
+   * time (see the odometry history in Robot).
+   *
+   * @param x Measured x, in meters.
+   * @param y Measured y, in meters.
+   * @param theta Measured heading, in radians.
+   * @param positionStdDev Standard deviation of the measured x and y, in meters.
+   * @param headingStdDev Standard deviation of the measured heading, in radians.
+   */
+  public void update(double x, double y, double theta, double positionStdDev, double headingStdDev) {
+    double r0 = positionStdDev * positionStdDev;
+    double r2 = headingStdDev * headingStdDev;
+
+    if (!m_initialized) {
+      m_x = x;
+      m_y = y;
+      m_theta = Math.IEEEremainder(theta, 2 * Math.PI);
+      m_p00 = r0;
+      m_p01 = 0;
+      m_p02 = 0;
+      m_p11 = r0;
+      m_p12 = 0;
+      m_p22 = r2;
+      m_initialized = true;
+      return;
+    }
+
+    // S = P + R
+    double s00 = m_p00 + r0;
+    double s01 = m_p01;
+    double s02 = m_p02;
+    double s11 = m_p11 + r0;
+    double s12 = m_p12;
+    double s22 = m_p22 + r2;
+
+    // S^-1 from the adjugate (symmetric)
+    double c00 = s11 * s22 - s12 * s12;
+    double c01 = s02 * s12 - s01 * s22;
+    double c02 = s01 * s12 - s02 * s11;
+    double c11 = s00 * s22 - s02 * s02;
+    double c12 = s01 * s02 - s00 * s12;
+    double c22 = s00 * s11 - s01 * s01;
+    double determinant = s00 * c00 + s01 * c01 + s02 * c02;
+    if (!(Math.abs(determinant) > 1e-18)) {
+      return;
+    }
+    double inverse = 1.0 / determinant;
+    double i00 = c00 * inverse;
+    double i01 = c01 * inverse;
+    double i02 = c02 * inverse;
+    double i11 = c11 * inverse;
+    double i12 = c12 * inverse;
+    double i22 = c22 * inverse;
+
+    // K = P S^-1
+    double k00 = m_p00 * i00 + m_p01 * i01 + m_p02 * i02;
+    double k01 = m_p00 * i01 + m_p01 * i11 + m_p02 * i12;
+    double k02 = m_p00 * i02 + m_p01 * i12 + m_p02 * i22;
+    double k10 = m_p01 * i00 + m_p11 * i01 + m_p12 * i02;
+    double k11 = m_p01 * i01 + m_p11 * i11 + m_p12 * i12;
+    double k12 = m_p01 * i02 + m_p11 * i12 + m_p12 * i22;
+    double k20 = m_p02 * i00 + m_p12 * i01 + m_p22 * i02;
+    double k21 = m_p02 * i01 + m_p12 * i11 + m_p22 * i12;
+    double k22 = m_p02 * i02 + m_p12 * i12 + m_p22 * i22;
+
+    // Innovation, with the heading wrapped to the short way round
+    double e0 = x - m_x;
+    double e1 = y - m_y;
+    double e2 = Math.IEEEremainder(theta - m_theta, 2 * Math.PI);
+
+    m_x += k00 * e0 + k01 * e1 + k02 * e2;
+    m_y += k10 * e0 + k11 * e1 + k12 * e2;
+    m_theta = Math.IEEEremainder(m_theta + k20 * e0 + k21 * e1 + k22 * e2, 2 * Math.PI);
+
+    // P = (I - K) P, kept symmetric by only computing the upper triangle
+    double p00 = m_p00 - (k00 * m_p00 + k01 * m_p01 + k02 * m_p02);
+    double p01 = m_p01 - (k00 * m_p01 + k01 * m_p11 + k02 * m_p12);
+    double p02 = m_p02 - (k00 * m_p02 + k01 * m_p12 + k02 * m_p22);
+    double p11 = m_p11 - (k10 * m_p01 + k11 * m_p11 + k12 * m_p12);
+    double p12 = m_p12 - (k10 * m_p02 + k11 * m_p12 + k12 * m_p22);
+    double p22 = m_p22 - (k20 * m_p02 + k21 * m_p12 + k22 * m_p22);
+    m_p00 = p00;
+    m_p01 = p01;
+    m_p02 = p02;
+    m_p11 = p11;
+    m_p12 = p12;
+    m_p22 = p22;
+  }
+
+  /**
+   * Corrects the estimate with a solved vision pose, deriving its noise from the solve: far tags and
+   * few tags make for a noisier pose, as does a large fit residual or a low single-tag confidence.
+   *
+   * @param sample The solve, for its tag count, distance, residual and confidence.
+   * @param x Measured x, moved to the current time, in meters.
+   * @param y Measured y, moved to the current time, in meters.
+   * @param theta Measured heading, moved to the current time, in radians.
+   */
+  public void update(VisionPoseSample sample, double x, double y, double theta) {
+    int usedTags = Math.max(1, sample.tagCount - sample.rejectedTags);
+    double scale =
+        Math.max(1.0, sample.meanDistance * sample.meanDistance)
+            / (Math.sqrt(usedTags) * Math.max(0.1, sample.confidence));
+    update(
+        x,
+        y,
+        theta,
+        VisionConstants.kVisionPositionStdDevMeters * scale + sample.residual,
+        VisionConstants.kVisionHeadingStdDevRadians * scale);
+  }
+
+  /** Whether a vision measurement has initialized the estimate yet. */
+  public boolean isInitialized() {
+    return m_initialized;
+  }
+
+  /** Estimated x, in meters. */
+  public double getX() {
+    return m_x;
+  }
+
+  /** Estimated y, in meters. */
+  public double getY() {
+    return m_y;
+  }
+
+  /** Estimated heading, in radians, wrapped to [-pi, pi]. */
+  public double getTheta() {
+    return m_theta;
+  }
+
+  /** Standard deviation of the estimated position, in meters (larger of x and y). */
+  public double getPositionStdDev() {
+    return Math.sqrt(Math.max(m_p00, m_p11));
+  }
+}
@@ -0,0 +1,202 @@
+package frc.robot.vision;
+
+import frc.robot.CC4HTriangulationImplementation;
+import frc.robot.Constants.VisionConstants;
+
+/**
+ * Robust pose estimate that survives a misdetected or ambiguous tag. Pairs of tags are sampled, each
+ * pair gives an exact pose hypothesis, and every tag is scored against it by how far its observed
+ * position lands from its field position (weighted by how unambiguous it was). The best hypothesis'
+ * inliers are then refit with {@link CC4HTriangulationImplementation#solveLeastSquares}.
+ *
+ * <p>Sampling stops early once the best hypothesis explains every tag or enough pairs have been
+ * tried to be confident in it, and always stops when the per-frame time budget runs out. Allocates
+ * nothing; use one instance per thread.
+ */
+public class RansacPoseEstimator {
+  // Odds of having sampled at least one all-inlier pair before the adaptive early stop
+  private static final double kConfidence = 0.99;
+
+  private final long m_budgetNanos;
+  private final double m_inlierThresholdSquared;
+  private long m_random;
+
+  // Scratch for the refit and the best hypothesis' inliers
+  private final boolean[] m_inliers = new boolean[VisionConstants.kMaxTags];
+  private final boolean[] m_bestInliers = new boolean[VisionConstants.kMaxTags];
+  private final double[] m_absoluteX = new double[VisionConstants.kMaxTags];
+  private final double[] m_absoluteY = new double[VisionConstants.kMaxTags];
+  private final double[] m_localX = new double[VisionConstants.kMaxTags];
+  private final double[] m_localY = new double[VisionConstants.kMaxTags];
+
+  private int m_iterations;
+  private boolean m_outOfTime;
+
+  /**
+   * Creates the estimator.
+   *
+   * @param budgetMicros Most time to spend sampling per frame, in microseconds.
+   * @param inlierThresholdMeters A tag whose observed position lands further than this from its
+   *     field position is an outlier.
+   */
+  public RansacPoseEstimator(long budgetMicros, double inlierThresholdMeters) {
+    m_budgetNanos = budgetMicros * 1000;
+    m_inlierThresholdSquared = inlierThresholdMeters * inlierThresholdMeters;
+    m_random = 0x9E3779B97F4A7C15L;
+  }
+
+  /**
+   * Estimates the robot pose from the given tags, ignoring the ones that don't agree with the rest.
+   *
+   * @param absoluteX Absolute tag x positions.
+   * @param absoluteY Absolute tag y positions.
+   * @param localX Robot-relative tag x positions (right).
+   * @param localY Robot-relative tag y positions (forward).
+   * @param ambiguity PhotonVision pose ambiguity of each tag (0 to 1, negative if unknown).
+   * @param count Number of tags, the best-conditioned pair (see {@link TargetSelector}) first.
+   * @param result Receives the pose; tagCount is the number of inliers it was fit to.
+   */
+  public void estimate(
+      double[] absoluteX,
+      double[] absoluteY,
+      double[] localX,
+      double[] localY,
+      double[] ambiguity,
+      int count,
+      CC4HTriangulationImplementation.CC4HTriangulationResult result) {
+    long deadline = System.nanoTime() + m_budgetNanos;
+    m_iterations = 0;
+    m_outOfTime = false;
+
+    if (count < 3) {
+      // Two tags always agree with each other, there's nothing to reject
+      for (int i = 0; i < count; i++) {
+        m_bestInliers[i] = true;
+      }
+      CC4HTriangulationImplementation.solveLeastSquares(absoluteX, absoluteY, localX, localY, count, result);
+      return;
+    }
+
+    for (int i = 0; i < count; i++) {
+      m_bestInliers[i] = false;
+    }
+    int pairs = count * (count - 1) / 2;
+    double requiredIterations = pairs;
+    double bestScore = -1.0;
+    int bestInlierCount = 0;
+
+    while (m_iterations < pairs && m_iterations < requiredIterations) {
+      if (System.nanoTime() > deadline) {
+        m_outOfTime = true;
+        break;
+      }
+      m_iterations++;
+
+      // The first hypothesis is the caller's best-conditioned pair, the rest are random
+      int first = 0;
+      int second = 1;
+      if (m_iterations > 1) {
+        first = nextInt(count);
+        second = nextInt(count - 1);
+        if (second >= first) {
+          second++;
+        }
+      }
+
+      // Exact rigid fit of the pair: the rotation that lines up the local and absolute vectors between them
+      double localDx = localX[second] - localX[first];
+      double localDy = localY[second] - localY[first];
+      double absoluteDx = absoluteX[second] - absoluteX[first];
+      double absoluteDy = absoluteY[second] - absoluteY[first];
+      double dot = localDx * absoluteDx + localDy * absoluteDy;
+      double cross = localDx * absoluteDy - localDy * absoluteDx;
+      double norm = Math.hypot(dot, cross);
+      if (norm < 1e-9) {
+        continue;
+      }
+      double cos = dot / norm;
+      double sin = cross / norm;
+      double x = absoluteX[first] - (cos * localX[first] - sin * localY[first]);
+      double y = absoluteY[first] - (sin * localX[first] + cos * localY[first]);
+
+      double score = 0.0;
+      int inlierCount = 0;
+      for (int i = 0; i < count; i++) {
+        double ex = cos * localX[i] - sin * localY[i] + x - absoluteX[i];
+        double ey = sin * localX[i] + cos * localY[i] + y - absoluteY[i];
+        double errorSquared = ex * ex + ey * ey;
+        m_inliers[i] = errorSquared < m_inlierThresholdSquared;
+        if (m_inliers[i]) {
+          inlierCount++;
+          // Unambiguous, well-fitting tags count for more
+          score += confidence(ambiguity[i]) * (1.0 - errorSquared / m_inlierThresholdSquared);
+        }
+      }
+
+      if (score > bestScore) {
+        bestScore = score;
+        bestInlierCount = inlierCount;
+        System.arraycopy(m_inliers, 0, m_bestInliers, 0, count);
+        if (inlierCount == count) {
+          break;
+        }
+
+        // Standard adaptive stop: enough samples that an all-inlier pair would very likely have come up
+        double inlierRatio = (double) inlierCount / count;
+        requiredIterations =
+            Math.log(1.0 - kConfidence) / Math.log(1.0 - inlierRatio * inlierRatio + 1e-12);
+      }
+    }
+
+    if (bestInlierCount < 2) {
+      result.tagCount = bestInlierCount;
+      result.valid = false;
+      return;
+    }
+
+    int inliers = 0;
+    for (int i = 0; i < count; i++) {
+      if (m_bestInliers[i]) {
+        m_absoluteX[inliers] = absoluteX[i];
+        m_absoluteY[inliers] = absoluteY[i];
+        m_localX[inliers] = localX[i];
+        m_localY[inliers] = localY[i];
+        inliers++;
+      }
+    }
+    CC4HTriangulationImplementation.solveLeastSquares(m_absoluteX, m_absoluteY, m_localX, m_localY, inliers, result);
+  }
+
+  /**
+   * Whether a tag was one of the inliers the last {@link #estimate} fit the pose to.
+   *
+   * @param index Index of the tag in the arrays passed to {@link #estimate}.
+   * @return true if the tag agreed with the pose
+   */
+  public boolean isInlier(int index) {
+    return m_bestInliers[index];
+  }
+
+  /** Pair hypotheses tried in the last {@link #estimate}. */
+  public int getIterations() {
+    return m_iterations;
+  }
+
+  /** Whether the last {@link #estimate} stopped because it ran out of time. */
+  public boolean wasOutOfTime() {
+    return m_outOfTime;
+  }
+
+  private static double confidence(double ambiguity) {
+    // PhotonVision reports -1 when it couldn't compute an ambiguity
+    return ambiguity < 0 ? CC4HTriangulationImplementation.UNKNOWN_AMBIGUITY_WEIGHT : Math.max(0.05, 1.0 - ambiguity);
+  }
+
+  private int nextInt(int bound) {
+    // xorshift64, no allocation and plenty random for picking pairs
+    m_random ^= m_random << 13;
+    m_random ^= m_random >>> 7;
+    m_random ^= m_random << 17;
+    return (int) ((m_random >>> 33) % bound);
+  }
+}
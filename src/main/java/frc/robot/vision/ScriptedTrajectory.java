@@ -0,0 +1,36 @@
+package frc.robot.vision;
+
+/**
+ * The path the simulated robot drives: a slow figure eight in front of a tag, turning to keep it
+ * roughly in view with a little wobble. Uses the triangulation convention (x right, y forward, theta
+ * clockwise from +y).
+ */
+public final class ScriptedTrajectory {
+  private final double m_focusX;
+  private final double m_focusY;
+
+  /**
+   * Creates the trajectory.
+   *
+   * @param focusX Absolute x of the point to drive in front of (usually a tag).
+   * @param focusY Absolute y of that point.
+   */
+  public ScriptedTrajectory(double focusX, double focusY) {
+    m_focusX = focusX;
+    m_focusY = focusY;
+  }
+
+  /**
+   * Gets the true pose at a time.
+   *
+   * @param timeSeconds Time since the start of the trajectory.
+   * @param pose Receives x, y and theta.
+   */
+  public void sample(double timeSeconds, double[] pose) {
+    double x = m_focusX + 1.0 * Math.sin(0.4 * timeSeconds);
+    double y = m_focusY - 2.0 + 0.5 * Math.sin(0.8 * timeSeconds);
+    pose[0] = x;
+    pose[1] = y;
+    pose[2] = Math.atan2(m_focusX - x, m_focusY - y) + 0.15 * Math.sin(1.3 * timeSeconds);
+  }
+}
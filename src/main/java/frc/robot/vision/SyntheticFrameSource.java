@@ -0,0 +1,137 @@
+package frc.robot.vision;
+
+import edu.wpi.first.math.geometry.Rotation3d;
+import edu.wpi.first.math.geometry.Transform3d;
+import edu.wpi.first.math.geometry.Translation3d;
+import frc.robot.Constants.VisionConstants;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.photonvision.targeting.PhotonPipelineResult;
+import org.photonvision.targeting.PhotonTrackedTarget;
+import org.photonvision.targeting.TargetCorner;
+
+/**
+ * A camera that doesn't exist: given where the robot really is, it reports the tags a camera at the
+ * robot-to-camera transform would see, with noise that grows with distance. Used in simulation and
+ * by {@link VisionSimulation} to exercise the vision code without hardware.
+ *
+ * <p>{@link #update} is called by whoever moves the simulated robot; {@link #getLatestResult} may be
+ * called from any thread.
+ */
+public class SyntheticFrameSource implements FrameSource {
+  private static final List<TargetCorner> kNoCorners = List.of();
+
+  private final String m_name;
+  private final FieldLayout m_fieldLayout;
+  private final Random m_random;
+
+  // Camera position (x right, y forward, z up) and yaw (clockwise) relative to the robot
+  private final double m_cameraX;
+  private final double m_cameraY;
+  private final double m_cameraZ;
+  private final double m_cameraYaw;
+
+  private volatile PhotonPipelineResult m_latestResult = new PhotonPipelineResult();
+
+  /**
+   * Creates the synthetic camera.
+   *
+   * @param name Camera name.
+   * @param fieldLayout Where the tags are.
+   * @param robotToCamera Camera pose relative to the robot, in WPILib coordinates (x forward, y
+   *     left, counterclockwise yaw).
+   * @param seed Seed for the noise, so runs are repeatable.
+   */
+  public SyntheticFrameSource(String name, FieldLayout fieldLayout, Transform3d robotToCamera, long seed) {
+    m_name = name;
+    m_fieldLayout = fieldLayout;
+    m_random = new Random(seed);
+    m_cameraX = -robotToCamera.getY();
+    m_cameraY = robotToCamera.getX();
+    m_cameraZ = robotToCamera.getZ();
+    m_cameraYaw = -robotToCamera.getRotation().getZ();
+  }
+
+  /**
+   * Takes a picture from a robot pose, in the triangulation convention (x right, y forward, theta
+   * clockwise from +y).
+   *
+   * @param x True robot x, in meters.
+   * @param y True robot y, in meters.
+   * @param theta True robot heading, in radians.
+   * @param timestampSeconds Capture time, in FPGA seconds.
+   * @param latencyMillis Pipeline latency to report.
+   */
+  public void update(double x, double y, double theta, double timestampSeconds, double latencyMillis) {
+    double robotSin = Math.sin(theta);
+    double robotCos = Math.cos(theta);
+    double cameraX = x + m_cameraX * robotCos + m_cameraY * robotSin;
+    double cameraY = y - m_cameraX * robotSin + m_cameraY * robotCos;
+    double cameraTheta = theta + m_cameraYaw;
+    double sin = Math.sin(cameraTheta);
+    double cos = Math.cos(cameraTheta);
+
+    List<PhotonTrackedTarget> targets = new ArrayList<>();
+    for (int id = 0; id <= VisionConstants.kMaxFiducialId; id++) {
+      if (!m_fieldLayout.hasTag(id)) {
+        continue;
+      }
+
+      double dx = m_fieldLayout.getX(id) - cameraX;
+      double dy = m_fieldLayout.getY(id) - cameraY;
+      double right = dx * cos - dy * sin;
+      double forward = dx * sin + dy * cos;
+      double up = m_fieldLayout.getZ(id) - m_cameraZ;
+      double distance = Math.sqrt(right * right + forward * forward + up * up);
+
+      // The tag's facing direction relative to the camera, counterclockwise from forward
+      double tagYaw = Math.IEEEremainder(m_fieldLayout.getYaw(id) + cameraTheta - Math.PI / 2, 2 * Math.PI);
+
+      // In front of the camera, within its field of view and range, and facing it
+      double bearing = Math.atan2(right, forward);
+      boolean facing = Math.cos(tagYaw) < 0;
+      if (forward <= 0
+          || Math.abs(bearing) > VisionConstants.kSimFieldOfViewRadians / 2
+          || distance > VisionConstants.kSimMaxRangeMeters
+          || !facing) {
+        continue;
+      }
+
+      double noise = VisionConstants.kSimNoiseMeters * distance * distance;
+      Transform3d cameraToTarget =
+          new Transform3d(
+              new Translation3d(
+                  forward + m_random.nextGaussian() * noise,
+                  -right + m_random.nextGaussian() * noise,
+                  up + m_random.nextGaussian() * noise),
+              new Rotation3d(0, 0, tagYaw + m_random.nextGaussian() * VisionConstants.kSimNoiseRadians * distance));
+
+      double yaw = Math.toDegrees(bearing);
+      double pitch = Math.toDegrees(Math.atan2(up, Math.hypot(right, forward)));
+      double apparentSize = VisionConstants.kSimTagSizeMeters / distance / VisionConstants.kSimFieldOfViewRadians;
+      double area = 100 * apparentSize * apparentSize;
+      double ambiguity = Math.min(0.19, 0.02 * distance * (1 + Math.abs(Math.sin(tagYaw))));
+      targets.add(
+          new PhotonTrackedTarget(
+              yaw, pitch, area, 0.0, id, cameraToTarget, cameraToTarget, ambiguity, kNoCorners, kNoCorners));
+    }
+
+    // PhotonVision sorts by area by default, so the best target comes first
+    targets.sort((a, b) -> Double.compare(b.getArea(), a.getArea()));
+
+    PhotonPipelineResult result = new PhotonPipelineResult(latencyMillis, targets);
+    result.setTimestampSeconds(timestampSeconds);
+    m_latestResult = result;
+  }
+
+  @Override
+  public String getName() {
+    return m_name;
+  }
+
+  @Override
+  public PhotonPipelineResult getLatestResult() {
+    return m_latestResult;
+  }
+}
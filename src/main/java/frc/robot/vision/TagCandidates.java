@@ -0,0 +1,83 @@
+package frc.robot.vision;
+
+/**
+ * Tags with known field positions that may go into a pose solve, as parallel arrays: where each one
+ * is on the field and relative to the robot (x right, y forward), and what {@link TargetSelector}
+ * ranks them on. Fixed capacity; allocates nothing after construction.
+ */
+final class TagCandidates {
+  final double[] absoluteX;
+  final double[] absoluteY;
+  final double[] localX;
+  final double[] localY;
+  final double[] ambiguity;
+  final double[] area;
+  final double[] range;
+  // Bearing from the robot's forward axis (clockwise), as seen from the tag's camera
+  final double[] sinBearing;
+  final double[] cosBearing;
+  int count;
+
+  TagCandidates(int capacity) {
+    absoluteX = new double[capacity];
+    absoluteY = new double[capacity];
+    localX = new double[capacity];
+    localY = new double[capacity];
+    ambiguity = new double[capacity];
+    area = new double[capacity];
+    range = new double[capacity];
+    sinBearing = new double[capacity];
+    cosBearing = new double[capacity];
+  }
+
+  /** Most tags the set can hold. */
+  int capacity() {
+    return absoluteX.length;
+  }
+
+  /**
+   * Appends as many of another set's tags as fit.
+   *
+   * @return the number of tags appended
+   */
+  int addAll(TagCandidates other) {
+    int copied = Math.min(other.count, capacity() - count);
+    System.arraycopy(other.absoluteX, 0, absoluteX, count, copied);
+    System.arraycopy(other.absoluteY, 0, absoluteY, count, copied);
+    System.arraycopy(other.localX, 0, localX, count, copied);
+    System.arraycopy(other.localY, 0, localY, count, copied);
+    System.arraycopy(other.ambiguity, 0, ambiguity, count, copied);
+    System.arraycopy(other.area, 0, area, count, copied);
+    System.arraycopy(other.range, 0, range, count, copied);
+    System.arraycopy(other.sinBearing, 0, sinBearing, count, copied);
+    System.arraycopy(other.cosBearing, 0, cosBearing, count, copied);
+    count += copied;
+    return copied;
+  }
+
+  /**
+   * Ranks the tags and copies the best of them, as many as fit, into another set in ranked order.
+   *
+   * @param selector Ranks the tags; its capacity must be at least this set's.
+   * @param selected Scratch for the ranked indices, at least this set's capacity.
+   * @param best Receives the best tags, the best-conditioned pair first. Its capacity is the limit.
+   * @return the number of tags copied
+   */
+  int selectInto(TargetSelector selector, int[] selected, TagCandidates best) {
+    int k = selector.select(range, sinBearing, cosBearing, ambiguity, area, count, best.capacity(), selected);
+    for (int i = 0; i < k; i++) {
+      int candidate = selected[i];
+      best.absoluteX[i] = absoluteX[candidate];
+      best.absoluteY[i] = absoluteY[candidate];
+      best.localX[i] = localX[candidate];
+      best.localY[i] = localY[candidate];
+      best.ambiguity[i] = ambiguity[candidate];
+      best.area[i] = area[candidate];
+      best.range[i] = range[candidate];
+      best.sinBearing[i] = sinBearing[candidate];
+      best.cosBearing[i] = cosBearing[candidate];
+    }
+    best.count = k;
+    return k;
+  }
+}
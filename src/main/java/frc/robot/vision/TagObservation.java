@@ -0,0 +1,75 @@
+package frc.robot.vision;
+
+import edu.wpi.first.math.geometry.Transform3d;
+import org.photonvision.targeting.PhotonTrackedTarget;
+
+/**
+ * One tracked target, converted once per frame into what the solvers need: the sine and cosine of
+ * its bearing and its planar range, from one square root and no trig functions. Later stages read
+ * these instead of computing distances or angles again. Instances are preallocated and reused,
+ * never created per frame.
+ *
+ * <p>The bearing is clockwise (to the right) from the camera's forward axis, the same sign as
+ * PhotonVision's yaw, so the tag sits at (range * sinBearing, range * cosBearing) in camera
+ * coordinates (x right, y forward).
+ */
+public final class TagObservation {
+  public int id;
+
+  /** Sine and cosine of the tag's bearing from the camera's forward axis, positive to the right. */
+  public double sinBearing;
+  public double cosBearing;
+
+  /** Distance from the camera to the tag in the floor plane, in meters. */
+  public double range;
+
+  /** Yaw of the tag's face relative to the camera, counterclockwise, in radians. */
+  public double tagYaw;
+
+  /** PhotonVision pose ambiguity, 0 to 1, negative if unknown. */
+  public double ambiguity;
+
+  /** Area of the tag, in percent of the image. */
+  public double area;
+
+  /**
+   * Fills the observation from a tracked target, using its camera-to-target transform.
+   *
+   * @param target The target; its best camera-to-target transform must be set.
+   */
+  public void set(PhotonTrackedTarget target) {
+    Transform3d cameraToTarget = target.getBestCameraToTarget();
+    id = target.getFiducialId();
+    ambiguity = target.getPoseAmbiguity();
+    area = target.getArea();
+    tagYaw = cameraToTarget.getRotation().getZ();
+    set(-cameraToTarget.getY(), cameraToTarget.getX());
+  }
+
+  /**
+   * Fills the bearing and range from a camera-relative position. The height of the tag is ignored.
+   *
+   * @param right Distance of the tag to the camera's right, in meters.
+   * @param forward Distance of the tag in front of the camera, in meters.
+   */
+  public void set(double right, double forward) {
+    range = Math.sqrt(right * right + forward * forward);
+    if (range > 0.0) {
+      sinBearing = right / range;
+      cosBearing = forward / range;
+    } else {
+      sinBearing = 0.0;
+      cosBearing = 1.0;
+    }
+  }
+
+  /** Distance of the tag to the camera's right, in meters. */
+  public double getRight() {
+    return range * sinBearing;
+  }
+
+  /** Distance of the tag in front of the camera, in meters. */
+  public double getForward() {
+    return range * cosBearing;
+  }
+}
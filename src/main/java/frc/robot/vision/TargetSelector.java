@@ -0,0 +1,119 @@
+package frc.robot.vision;
+
+import frc.robot.CC4HTriangulationImplementation;
+
+/**
+ * Picks the tags worth solving from a frame, or from every camera's frames merged, best conditioned
+ * first. Each tag is scored on its distance, pose ambiguity and area, and only the top k are solved;
+ * they are found by partial selection (O(n k), no sort). Of those the pair that sees the most
+ * angular separation from the robot goes first. The least-squares fit doesn't depend on the order,
+ * but RANSAC tries that pair as its first hypothesis, and two tags nearly in line with the robot
+ * make the two-tag determinant blow up.
+ *
+ * <p>Works on caller-owned arrays with preallocated scratch, so it allocates nothing, but must only
+ * be used from one thread at a time.
+ */
+public final class TargetSelector {
+  private final double m_halfScoreDistanceSquared;
+  private final double[] m_scores;
+
+  /**
+   * Creates the selector.
+   *
+   * @param capacity Most candidate tags in one call.
+   * @param halfScoreDistanceMeters Distance at which a tag's score halves.
+   */
+  public TargetSelector(int capacity, double halfScoreDistanceMeters) {
+    m_scores = new double[capacity];
+    m_halfScoreDistanceSquared = halfScoreDistanceMeters * halfScoreDistanceMeters;
+  }
+
+  /**
+   * Selects the best tags.
+   *
+   * @param range Distance from the camera to each candidate, in meters.
+   * @param sinBearing Sine of each candidate's bearing from the robot's forward axis (clockwise),
+   *     as seen from its camera.
+   * @param cosBearing Cosine of the same.
+   * @param ambiguity Pose ambiguity of each candidate, negative if unknown.
+   * @param area Area of each candidate, in percent of the image.
+   * @param count Number of candidates.
+   * @param limit Most tags to select.
+   * @param selected Receives the indices of the selected candidates: the best-conditioned pair
+   *     first, then the rest from best to worst score.
+   * @return the number of tags selected
+   */
+  public int select(
+      double[] range,
+      double[] sinBearing,
+      double[] cosBearing,
+      double[] ambiguity,
+      double[] area,
+      int count,
+      int limit,
+      int[] selected) {
+    for (int i = 0; i < count; i++) {
+      selected[i] = i;
+      double distanceSquared = range[i] * range[i];
+      double ambiguityFactor =
+          ambiguity[i] < 0.0
+              ? CC4HTriangulationImplementation.UNKNOWN_AMBIGUITY_WEIGHT
+              : 1.0 / (1.0 + 5.0 * ambiguity[i]);
+      m_scores[i] =
+          ambiguityFactor
+              * Math.sqrt(Math.max(area[i], 0.0))
+              / (1.0 + distanceSquared / m_halfScoreDistanceSquared);
+    }
+
+    // Partial selection sort: only the first k places get sorted
+    int k = Math.min(count, limit);
+    for (int place = 0; place < k; place++) {
+      int best = place;
+      for (int i = place + 1; i < count; i++) {
+        if (m_scores[selected[i]] > m_scores[selected[best]]) {
+          best = i;
+        }
+      }
+      int swap = selected[place];
+      selected[place] = selected[best];
+      selected[best] = swap;
+    }
+
+    if (k > 2) {
+      moveBestPairToFront(sinBearing, cosBearing, selected, k);
+    }
+    return k;
+  }
+
+  /**
+   * Finds the pair with the best product of scores and angular separation as seen from the robot
+   * (the sine of the angle between them, which is what scales the two-tag determinant) and swaps
+   * it into the first two places.
+   */
+  private void moveBestPairToFront(double[] sinBearing, double[] cosBearing, int[] selected, int k) {
+    double bestPairScore = -1.0;
+    int bestFirst = 0;
+    int bestSecond = 1;
+    for (int a = 0; a < k; a++) {
+      int i = selected[a];
+      for (int b = a + 1; b < k; b++) {
+        int j = selected[b];
+        // |sin(bearing i - bearing j)|
+        double separation = Math.abs(sinBearing[i] * cosBearing[j] - cosBearing[i] * sinBearing[j]);
+        double pairScore = m_scores[i] * m_scores[j] * separation;
+        if (pairScore > bestPairScore) {
+          bestPairScore = pairScore;
+          bestFirst = a;
+          bestSecond = b;
+        }
+      }
+    }
+
+    int swap = selected[0];
+    selected[0] = selected[bestFirst];
+    selected[bestFirst] = swap;
+    swap = selected[1];
+    selected[1] = selected[bestSecond];
+    selected[bestSecond] = swap;
+  }
+}
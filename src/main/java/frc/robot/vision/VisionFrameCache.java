@@ -0,0 +1,55 @@
+package frc.robot.vision;
+
+import org.photonvision.targeting.PhotonPipelineResult;
+
+/**
+ * Remembers which frame was solved last, keyed on its capture timestamp, so a frame that has already
+ * been solved isn't solved (or recorded, or merged into a pose) again when the vision thread wakes up
+ * without a new image. A hit needs no result: the camera simply has nothing new. Counts hits and
+ * misses so we can see how much work it saves.
+ *
+ * <p>Only the vision thread may call {@link #isCached} and {@link #store}; the counters can be read
+ * from anywhere.
+ */
+public class VisionFrameCache {
+  private double m_timestampSeconds = Double.NaN;
+  private int m_targetCount = -1;
+  private volatile long m_hits;
+  private volatile long m_misses;
+
+  /**
+   * Checks whether a frame is the one last stored, counting a hit or a miss.
+   *
+   * @param result The frame just fetched from the camera.
+   * @return true if the frame was already solved
+   */
+  public boolean isCached(PhotonPipelineResult result) {
+    // PhotonVision stamps each image once, so an identical timestamp (and target count) is the same frame
+    if (result.getTimestampSeconds() == m_timestampSeconds && result.getTargets().size() == m_targetCount) {
+      m_hits++;
+      return true;
+    }
+    m_misses++;
+    return false;
+  }
+
+  /**
+   * Remembers a frame as solved.
+   *
+   * @param result The frame that was solved.
+   */
+  public void store(PhotonPipelineResult result) {
+    m_timestampSeconds = result.getTimestampSeconds();
+    m_targetCount = result.getTargets().size();
+  }
+
+  /** Frames that were already solved and skipped. */
+  public long getHits() {
+    return m_hits;
+  }
+
+  /** Frames that were new and had to be solved. */
+  public long getMisses() {
+    return m_misses;
+  }
+}
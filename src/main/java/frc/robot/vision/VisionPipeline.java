@@ -0,0 +1,302 @@
+package frc.robot.vision;
+
+import edu.wpi.first.math.geometry.Transform3d;
+import edu.wpi.first.networktables.NetworkTableEvent;
+import edu.wpi.first.networktables.NetworkTableInstance;
+import edu.wpi.first.networktables.Topic;
+import frc.robot.Constants.LogConstants;
+import frc.robot.Constants.VisionConstants;
+import frc.robot.util.MetricsRegistry;
+import frc.robot.util.StageTimer;
+import frc.robot.util.TelemetryLog;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+import org.photonvision.targeting.PhotonPipelineResult;
+import org.photonvision.targeting.PhotonTrackedTarget;
+
+/**
+ * Runs camera result deserialisation and triangulation on its own thread so that a slow frame
+ * never delays the main robot loop. The thread sleeps until PhotonVision publishes a new frame from
+ * any camera over NetworkTables, processes every camera through the {@link CameraSet}, and hands
+ * the merged result to the main loop through a {@link PoseHandoff}.
+ */
+public class VisionPipeline implements AutoCloseable {
+  private final CameraSet m_cameras;
+  private final PoseHandoff m_handoff = new PoseHandoff();
+  private final LatestTarget m_latestTarget = new LatestTarget();
+  private final Thread m_thread;
+  private final int[] m_listenerHandles;
+  private final AtomicBoolean m_newFrame = new AtomicBoolean();
+  private volatile boolean m_running;
+  private long m_sequence;
+
+  private static final int kCameraStage = 0;
+  private static final int kRecordStage = 1;
+  private static final int kSolveStage = 2;
+  private static final int kPublishStage = 3;
+  private final StageTimer m_timer =
+      new StageTimer("Vision Timing", "Cameras", "Record", "Solve", "Handoff");
+
+  // Set up by registerMetrics() before start(), or null
+  private MetricsRegistry.Counter m_framesMetric;
+  private MetricsRegistry.Counter m_posesMetric;
+  private MetricsRegistry.Gauge m_latencyMetric;
+
+  // Only touched by the vision thread
+  private final FrameRecorder m_recorder;
+  private final TelemetryLog m_log;
+  private final int m_frameEntry;
+  private final int m_poseEntry;
+  private final double[] m_logValues = new double[LogConstants.kMaxRecordValues];
+
+  /**
+   * Creates the pipeline. Call {@link #start()} to begin processing.
+   *
+   * @param cameras The cameras to read results from. Only the vision thread touches them after start.
+   * @param recorder Log every frame is written to, or null to not record.
+   * @param log Telemetry log for every frame's observations, solved pose and timing, or null.
+   */
+  public VisionPipeline(CameraSet cameras, FrameRecorder recorder, TelemetryLog log) {
+    m_cameras = cameras;
+    m_recorder = recorder;
+    m_log = log;
+    if (log != null) {
+      m_frameEntry =
+          log.addEntry(
+              "vision/frame",
+              "camera, capture time (s), latency (ms), targets, then per target: id, yaw, pitch, area, ambiguity, x, y, z");
+      m_poseEntry =
+          log.addEntry(
+              "vision/pose",
+              "sequence, capture time (s), valid, x, y, theta, residual, tags, rejected tags, confidence, mean distance");
+      m_timer.logTo(log, "vision/timing");
+    } else {
+      m_frameEntry = -1;
+      m_poseEntry = -1;
+    }
+    m_listenerHandles = new int[cameras.size()];
+    m_thread = new Thread(this::run, "Vision");
+    m_thread.setDaemon(true);
+  }
+
+  /**
+   * Registers the pipeline's frame rate, solved pose rate, camera latency, cache hits and solve
+   * timing. Call it before {@link #start()}.
+   *
+   * @param registry The registry, not started yet.
+   */
+  public void registerMetrics(MetricsRegistry registry) {
+    m_framesMetric = registry.counter("vision/frames");
+    m_posesMetric = registry.counter("vision/poses");
+    m_latencyMetric = registry.gauge("vision/latency_ms");
+    registry.counter("vision/cache_hits", m_cameras::getCacheHits);
+    registry.counter("vision/cache_misses", m_cameras::getCacheMisses);
+    m_timer.registerMetrics(registry, "vision/frame");
+  }
+
+  /** Starts the vision thread and subscribes to new-frame events. */
+  public void start() {
+    m_running = true;
+    m_thread.start();
+
+    // PhotonVision publishes every frame to photonvision/<camera>/rawBytes; wake the thread on each one
+    for (int i = 0; i < m_cameras.size(); i++) {
+      Topic rawBytes =
+          NetworkTableInstance.getDefault()
+              .getTable("photonvision")
+              .getSubTable(m_cameras.getName(i))
+              .getTopic("rawBytes");
+      m_listenerHandles[i] =
+          NetworkTableInstance.getDefault()
+              .addListener(
+                  rawBytes,
+                  EnumSet.of(NetworkTableEvent.Kind.kValueAll),
+                  event -> notifyNewFrame());
+    }
+  }
+
+  /**
+   * Wakes the vision thread to process the cameras' newest frames. NetworkTables does this for real
+   * cameras; synthetic frame sources have to call it themselves.
+   */
+  public void notifyNewFrame() {
+    m_newFrame.set(true);
+    LockSupport.unpark(m_thread);
+  }
+
+  /**
+   * The handoff the main loop reads poses from. Only one thread may read from it.
+   *
+   * @return the pose handoff
+   */
+  public PoseHandoff getHandoff() {
+    return m_handoff;
+  }
+
+  /**
+   * Gets the newest target yaw, for control loops running off the main thread.
+   *
+   * @return the latest target
+   */
+  public LatestTarget getLatestTarget() {
+    return m_latestTarget;
+  }
+
+  /**
+   * Per-stage timing of the vision thread. Only call {@link StageTimer#publishIfDue()} on it, and
+   * only from one thread.
+   *
+   * @return the vision thread's stage timer
+   */
+  public StageTimer getTimer() {
+    return m_timer;
+  }
+
+  /**
+   * The cameras, for their frame cache counters. Don't fetch results from them.
+   *
+   * @return the camera set
+   */
+  public CameraSet getCameraSet() {
+    return m_cameras;
+  }
+
+  /** Writes the recorded frames to the disk, if frames are being recorded. */
+  public void flushFrameLog() {
+    if (m_recorder != null) {
+      m_recorder.force();
+    }
+  }
+
+  @Override
+  public void close() {
+    m_running = false;
+    for (int handle : m_listenerHandles) {
+      NetworkTableInstance.getDefault().removeListener(handle);
+    }
+    LockSupport.unpark(m_thread);
+    try {
+      m_thread.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    m_cameras.close();
+    if (m_recorder != null) {
+      m_recorder.close();
+    }
+  }
+
+  private void run() {
+    while (m_running) {
+      waitForFrame();
+      if (!m_running) {
+        break;
+      }
+
+      m_timer.start();
+      // Timed-out wakeups hand back frames we already solved, which the main loop already has
+      if (m_cameras.update() == 0) {
+        continue;
+      }
+      m_timer.mark(kCameraStage);
+      processFrames();
+      m_timer.finish();
+    }
+  }
+
+  /**
+   * Sleeps until a camera publishes a new frame or the wait times out. Stray unparks (e.g. from the
+   * camera workers) just go back to sleep.
+   */
+  private void waitForFrame() {
+    long deadline = System.nanoTime() + VisionConstants.kFrameWaitTimeoutNanos;
+    while (!m_newFrame.getAndSet(false) && m_running) {
+      long remaining = deadline - System.nanoTime();
+      if (remaining <= 0) {
+        return;
+      }
+      LockSupport.parkNanos(this, remaining);
+    }
+  }
+
+  /**
+   * Records and solves the new frames from the last camera update and publishes the result to the
+   * handoff. Runs on the vision thread.
+   */
+  private void processFrames() {
+    long sequence = ++m_sequence;
+    for (int i = 0; i < m_cameras.size(); i++) {
+      if (m_cameras.isFresh(i)) {
+        if (m_recorder != null) {
+          m_recorder.record(sequence, i, m_cameras.getResult(i));
+        }
+        if (m_log != null) {
+          logFrame(i, m_cameras.getResult(i));
+        }
+      }
+    }
+    m_timer.mark(kRecordStage);
+
+    VisionPoseSample sample = m_handoff.beginWrite();
+    sample.sequence = sequence;
+    m_cameras.solve(sample);
+    m_timer.mark(kSolveStage);
+    m_latestTarget.write(sample.sequence, sample.timestampSeconds, sample.hasTargets, sample.bestYaw);
+    m_handoff.publish();
+    if (m_log != null) {
+      logPose(sample);
+    }
+    if (m_framesMetric != null) {
+      m_framesMetric.increment();
+      m_latencyMetric.set(sample.latencyMillis);
+      if (sample.valid) {
+        m_posesMetric.increment();
+      }
+    }
+    m_timer.mark(kPublishStage);
+  }
+
+  /** Queues one camera frame's raw observations to the telemetry log. */
+  private void logFrame(int cameraIndex, PhotonPipelineResult result) {
+    List<PhotonTrackedTarget> targets = result.getTargets();
+    int count = Math.min(targets.size(), LogConstants.kMaxRecordTags);
+    double[] values = m_logValues;
+    values[0] = cameraIndex;
+    values[1] = result.getTimestampSeconds();
+    values[2] = result.getLatencyMillis();
+    values[3] = count;
+    int next = 4;
+    for (int i = 0; i < count; i++) {
+      PhotonTrackedTarget target = targets.get(i);
+      Transform3d cameraToTarget = target.getBestCameraToTarget();
+      values[next++] = target.getFiducialId();
+      values[next++] = target.getYaw();
+      values[next++] = target.getPitch();
+      values[next++] = target.getArea();
+      values[next++] = target.getPoseAmbiguity();
+      values[next++] = cameraToTarget.getX();
+      values[next++] = cameraToTarget.getY();
+      values[next++] = cameraToTarget.getZ();
+    }
+    m_log.append(m_frameEntry, values, next);
+  }
+
+  /** Queues the merged solve to the telemetry log. */
+  private void logPose(VisionPoseSample sample) {
+    double[] values = m_logValues;
+    values[0] = sample.sequence;
+    values[1] = sample.timestampSeconds;
+    values[2] = sample.valid ? 1 : 0;
+    values[3] = sample.x;
+    values[4] = sample.y;
+    values[5] = sample.theta;
+    values[6] = sample.residual;
+    values[7] = sample.tagCount;
+    values[8] = sample.rejectedTags;
+    values[9] = sample.confidence;
+    values[10] = sample.meanDistance;
+    m_log.append(m_poseEntry, values, 11);
+  }
+}
@@ -0,0 +1,46 @@
+package frc.robot.vision;
+
+/**
+ * One processed camera frame: the solved robot pose plus a little information about the best
+ * target. Instances are preallocated and reused by {@link PoseHandoff}, never created per frame.
+ */
+public final class VisionPoseSample {
+  /** Incremented by the pipeline for every processed frame. */
+  public long sequence;
+
+  /** Time the image was captured, in FPGA seconds (latency already subtracted). */
+  public double timestampSeconds;
+
+  public double latencyMillis;
+  public boolean hasTargets;
+
+  /** Whether x, y and theta hold a pose solved from this frame. */
+  public boolean valid;
+
+  public double x;
+  public double y;
+  public double theta;
+  public double residual;
+  public int tagCount;
+
+  /** Tags left out of the solve because they disagreed with the others. */
+  public int rejectedTags;
+
+  /** Mean camera-to-tag distance over the tags the pose was fit to, in meters. */
+  public double meanDistance;
+
+  /** How far to trust the pose, 0 to 1. Multi-tag poses are 1, single-tag ones less. */
+  public double confidence;
+
+  public int bestId;
+
+  /** Yaw from the robot's heading to the best target, in degrees (positive right). */
+  public double bestYaw;
+
+  public double bestPitch;
+
+  /** Camera-to-target translation of the best target, in meters. */
+  public double bestX;
+  public double bestY;
+  public double bestZ;
+}
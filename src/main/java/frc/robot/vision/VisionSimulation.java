@@ -0,0 +1,151 @@
+package frc.robot.vision;
+
+import edu.wpi.first.apriltag.AprilTagFieldLayout;
+import frc.robot.Constants.DriveConstants;
+import frc.robot.Constants.VisionConstants;
+import frc.robot.util.LatencyHistogram;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Desktop tool that drives a {@link ScriptedTrajectory} past the field layout's tags, feeds
+ * synthetic frames from every configured camera through the same {@link CameraSet} solve and {@link
+ * PoseKalmanFilter} the robot uses, and reports the pose error and per-frame cost. Runs as fast as
+ * the CPU allows.
+ *
+ * <p>Usage: {@code ./gradlew simulateVision --args="[field layout json] [simulated seconds]"}
+ */
+public final class VisionSimulation {
+  private static final String kDefaultLayout = "src/main/deploy/fieldlayout.json";
+  private static final double kDefaultSeconds = 120.0;
+
+  private VisionSimulation() {
+    throw new UnsupportedOperationException("This is a utility class!");
+  }
+
+  public static void main(String... args) throws IOException {
+    FieldLayout fieldLayout = new FieldLayout(new AprilTagFieldLayout(args.length > 0 ? args[0] : kDefaultLayout));
+    double seconds = args.length > 1 ? Double.parseDouble(args[1]) : kDefaultSeconds;
+
+    SyntheticFrameSource[] sources = createSources(fieldLayout);
+    CameraSet cameras = new CameraSet(sources, VisionConstants.kRobotToCameras, fieldLayout);
+    ScriptedTrajectory trajectory = createTrajectory(fieldLayout);
+    PoseKalmanFilter filter =
+        new PoseKalmanFilter(DriveConstants.kOdometryPositionNoisePerMeter, DriveConstants.kOdometryHeadingNoisePerMeter);
+    VisionPoseSample sample = new VisionPoseSample();
+    LatencyHistogram frameCost = new LatencyHistogram();
+    Random odometryNoise = new Random(1);
+
+    double period = 1.0 / VisionConstants.kSimFrameRate;
+    int frameCount = (int) (seconds * VisionConstants.kSimFrameRate);
+    double[] pose = new double[3];
+    double[] lastPose = new double[3];
+    trajectory.sample(0.0, lastPose);
+
+    int posed = 0;
+    int singleTag = 0;
+    double sumSingleTagError = 0.0;
+    double sumError = 0.0;
+    double maxError = 0.0;
+    double sumHeadingError = 0.0;
+    double sumFilteredError = 0.0;
+    int filtered = 0;
+    long start = System.nanoTime();
+    for (int i = 1; i <= frameCount; i++) {
+      double time = i * period;
+      trajectory.sample(time, pose);
+
+      // Odometry sees the true motion in the robot's frame, a little noisily
+      double dx = pose[0] - lastPose[0];
+      double dy = pose[1] - lastPose[1];
+      double forward = dx * Math.sin(lastPose[2]) + dy * Math.cos(lastPose[2]);
+      double left = -dx * Math.cos(lastPose[2]) + dy * Math.sin(lastPose[2]);
+      double headingChange = -Math.IEEEremainder(pose[2] - lastPose[2], 2 * Math.PI);
+      filter.predict(
+          forward * (1 + odometryNoise.nextGaussian() * 0.02), left, headingChange * (1 + odometryNoise.nextGaussian() * 0.02));
+      System.arraycopy(pose, 0, lastPose, 0, 3);
+
+      for (SyntheticFrameSource source : sources) {
+        source.update(pose[0], pose[1], pose[2], time, VisionConstants.kSimLatencyMillis);
+      }
+
+      long frameStart = System.nanoTime();
+      if (cameras.update() > 0) {
+        cameras.solve(sample);
+      }
+      frameCost.record(System.nanoTime() - frameStart);
+
+      if (sample.valid) {
+        posed++;
+        double error = Math.hypot(sample.x - pose[0], sample.y - pose[1]);
+        if (sample.tagCount == 1) {
+          singleTag++;
+          sumSingleTagError += error;
+        }
+        sumError += error;
+        maxError = Math.max(maxError, error);
+        sumHeadingError += Math.abs(Math.IEEEremainder(sample.theta - pose[2], 2 * Math.PI));
+
+        // Frames are solved at their capture time here, so there's no latency to compensate
+        filter.update(sample, sample.x, sample.y, sample.theta);
+      }
+      if (filter.isInitialized()) {
+        sumFilteredError += Math.hypot(filter.getX() - pose[0], filter.getY() - pose[1]);
+        filtered++;
+      }
+    }
+    long elapsed = System.nanoTime() - start;
+    frameCost.closeWindow();
+    cameras.close();
+
+    System.out.printf(
+        "Simulated %.0f s (%d frames from %d camera(s)) in %.2f s, %.0fx real time%n",
+        seconds, frameCount, sources.length, elapsed / 1e9, seconds * 1e9 / elapsed);
+    System.out.printf(
+        "%d/%d frames produced a pose (%d from a single tag)%n", posed, frameCount, singleTag);
+    if (posed > 0) {
+      System.out.printf(
+          "Solve error: mean %.3f m, max %.3f m, mean heading %.2f deg%n",
+          sumError / posed, maxError, Math.toDegrees(sumHeadingError / posed));
+    }
+    if (singleTag > 0) {
+      System.out.printf("Single-tag error: mean %.3f m%n", sumSingleTagError / singleTag);
+    }
+    if (filtered > 0) {
+      System.out.printf("Filtered error: mean %.3f m%n", sumFilteredError / filtered);
+    }
+    System.out.printf(
+        "Frame cost: p50 %d us, p99 %d us, max %d us%n",
+        frameCost.getWindowP50Micros(), frameCost.getWindowP99Micros(), frameCost.getWindowMaxMicros());
+  }
+
+  /**
+   * Creates a synthetic camera for every configured camera.
+   *
+   * @param fieldLayout Where the tags are.
+   * @return the cameras, in the same order as the constants
+   */
+  public static SyntheticFrameSource[] createSources(FieldLayout fieldLayout) {
+    SyntheticFrameSource[] sources = new SyntheticFrameSource[VisionConstants.kCameraNames.length];
+    for (int i = 0; i < sources.length; i++) {
+      sources[i] =
+          new SyntheticFrameSource(VisionConstants.kCameraNames[i], fieldLayout, VisionConstants.kRobotToCameras[i], i + 1);
+    }
+    return sources;
+  }
+
+  /**
+   * Creates a trajectory in front of the layout's lowest numbered tag.
+   *
+   * @param fieldLayout Where the tags are.
+   * @return the trajectory
+   */
+  public static ScriptedTrajectory createTrajectory(FieldLayout fieldLayout) {
+    for (int id = 0; id <= VisionConstants.kMaxFiducialId; id++) {
+      if (fieldLayout.hasTag(id)) {
+        return new ScriptedTrajectory(fieldLayout.getX(id), fieldLayout.getY(id));
+      }
+    }
+    return new ScriptedTrajectory(0.0, 0.0);
+  }
+}
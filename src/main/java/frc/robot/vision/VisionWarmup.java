@@ -0,0 +1,92 @@
+package frc.robot.vision;
+
+import edu.wpi.first.apriltag.AprilTagFieldLayout;
+import frc.robot.CC4HTriangulationImplementation;
+import frc.robot.Constants.DriveConstants;
+import frc.robot.Constants.VisionConstants;
+import java.io.IOException;
+import org.photonvision.common.dataflow.structures.Packet;
+import org.photonvision.targeting.PhotonPipelineResult;
+
+/**
+ * Runs synthetic frames through the vision path before the match, so the first real frames don't
+ * pay for class loading and interpreted code: PhotonLib's packet decoding, the frame solve, RANSAC,
+ * every triangulation solver and the pose filter.
+ *
+ * <p>Its main method does the same on the desktop and reports how long it took.
+ */
+public final class VisionWarmup {
+  private static final String kDefaultLayout = "src/main/deploy/fieldlayout.json";
+
+  private VisionWarmup() {
+    throw new UnsupportedOperationException("This is a utility class!");
+  }
+
+  /**
+   * Solves synthetic frames from a scripted drive past the layout's tags.
+   *
+   * @param fieldLayout Where the tags are.
+   * @param frames How many frames to solve.
+   * @return how long it took, in milliseconds
+   */
+  public static double run(FieldLayout fieldLayout, int frames) {
+    long start = System.nanoTime();
+
+    SyntheticFrameSource source =
+        new SyntheticFrameSource("Warmup", fieldLayout, VisionConstants.kRobotToCameras[0], 1);
+    ScriptedTrajectory trajectory = VisionSimulation.createTrajectory(fieldLayout);
+    FrameSolver frameSolver = new FrameSolver(fieldLayout, VisionConstants.kRobotToCameras[0]);
+    RansacPoseEstimator ransac =
+        new RansacPoseEstimator(VisionConstants.kRansacBudgetMicros, VisionConstants.kRansacInlierThresholdMeters);
+    PoseKalmanFilter filter =
+        new PoseKalmanFilter(DriveConstants.kOdometryPositionNoisePerMeter, DriveConstants.kOdometryHeadingNoisePerMeter);
+    VisionPoseSample sample = new VisionPoseSample();
+    CC4HTriangulationImplementation.CC4HTriangulationResult result =
+        new CC4HTriangulationImplementation.CC4HTriangulationResult();
+    double[] absoluteX = new double[VisionConstants.kMaxTags];
+    double[] absoluteY = new double[VisionConstants.kMaxTags];
+    double[] localX = new double[VisionConstants.kMaxTags];
+    double[] localY = new double[VisionConstants.kMaxTags];
+    double[] ambiguity = new double[VisionConstants.kMaxTags];
+    double[] range = new double[VisionConstants.kMaxTags];
+    double[] pose = new double[3];
+
+    for (int i = 0; i < frames; i++) {
+      trajectory.sample(i * 0.02, pose);
+      source.update(pose[0], pose[1], pose[2], i * 0.02, VisionConstants.kSimLatencyMillis);
+
+      // Through PhotonLib's wire format and back, as PhotonCamera.getLatestResult() decodes it
+      PhotonPipelineResult frame = source.getLatestResult();
+      Packet packet = new Packet(frame.getPacketSize());
+      frame.populatePacket(packet);
+      PhotonPipelineResult decoded = new PhotonPipelineResult();
+      decoded.createFromPacket(packet);
+      decoded.setTimestampSeconds(frame.getTimestampSeconds());
+
+      frameSolver.solve(decoded, sample);
+      int count =
+          frameSolver.copySelected(absoluteX, absoluteY, localX, localY, ambiguity, range, 0, sample.tagCount);
+      if (count >= 2) {
+        ransac.estimate(absoluteX, absoluteY, localX, localY, ambiguity, count, result);
+        double range0 = Math.hypot(localX[0], localY[0]);
+        double range1 = Math.hypot(localX[1], localY[1]);
+        CC4HTriangulationImplementation.solveTwoTag(
+            absoluteX[0], absoluteY[0], range0, localX[0] / range0, localY[0] / range0,
+            absoluteX[1], absoluteY[1], range1, localX[1] / range1, localY[1] / range1, result);
+      }
+      frameSolver.solveSingleTag(sample);
+
+      filter.predict(0.02, 0.0, 0.001);
+      if (sample.valid) {
+        filter.update(sample, sample.x, sample.y, sample.theta);
+      }
+    }
+
+    return (System.nanoTime() - start) / 1e6;
+  }
+
+  public static void main(String... args) throws IOException {
+    FieldLayout fieldLayout = new FieldLayout(new AprilTagFieldLayout(args.length > 0 ? args[0] : kDefaultLayout));
+    System.out.printf("Vision warm-up took %.1f ms%n", run(fieldLayout, VisionConstants.kWarmupFrames));
+  }
+}
@@ -0,0 +1,56 @@
+package frc.robot;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Measures what a hot path allocates per call, for the allocation tests. Each path is warmed up
+ * until the JIT has compiled it (so escape analysis has had its chance), then run many more times
+ * while the thread's allocation counter is watched.
+ */
+public final class Allocations {
+  private static final int kWarmupCalls = 50_000;
+  private static final int kMeasuredCalls = 200_000;
+
+  // Allowance for whatever the measurement itself allocates, spread over every measured call
+  private static final long kSlackBytes = 1024;
+
+  private static com.sun.management.ThreadMXBean s_threads;
+
+  private Allocations() {}
+
+  /** Skips the calling test if this JVM can't count allocated bytes, and turns counting on. */
+  public static void assumeMeasurable() {
+    s_threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    assumeTrue(s_threads.isThreadAllocatedMemorySupported(), "This JVM can't count allocated bytes");
+    s_threads.setThreadAllocatedMemoryEnabled(true);
+  }
+
+  /**
+   * Warms up a hot path, then asserts what it allocates per call is within budget. Call {@link
+   * #assumeMeasurable()} first.
+   *
+   * @param name Name for the failure message.
+   * @param budgetBytes Bytes the path may allocate per call.
+   * @param path One call of the path.
+   */
+  public static void assertAllocates(String name, long budgetBytes, Runnable path) {
+    for (int i = 0; i < kWarmupCalls; i++) {
+      path.run();
+    }
+
+    long thread = Thread.currentThread().getId();
+    long before = s_threads.getThreadAllocatedBytes(thread);
+    for (int i = 0; i < kMeasuredCalls; i++) {
+      path.run();
+    }
+    long allocated = s_threads.getThreadAllocatedBytes(thread) - before;
+
+    assertTrue(
+        allocated <= budgetBytes * kMeasuredCalls + kSlackBytes,
+        String.format(
+            "%s allocated %.2f B/call, budget %d", name, (double) allocated / kMeasuredCalls, budgetBytes));
+  }
+}
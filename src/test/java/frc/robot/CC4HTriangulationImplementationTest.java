@@ -0,0 +1,123 @@
+package frc.robot;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import edu.wpi.first.math.geometry.Transform2d;
+import edu.wpi.first.math.geometry.Translation2d;
+import org.junit.jupiter.api.Test;
+
+/** Pins the degree/radian contract between the object API and the static solvers. */
+class CC4HTriangulationImplementationTest {
+  private static final double kEpsilon = 1e-9;
+
+  // Two tags ahead of a robot at (0.2, -0.4), turned 0.3 rad clockwise
+  private static final double kRobotX = 0.2;
+  private static final double kRobotY = -0.4;
+  private static final double kTheta = 0.3;
+  private static final double[][] kTags = {{-1.0, 3.0}, {1.0, 3.5}};
+
+  private static double distance(int tag) {
+    return Math.hypot(kTags[tag][0] - kRobotX, kTags[tag][1] - kRobotY);
+  }
+
+  /** Angle of a tag from the robot's forward vector, in radians, clockwise. */
+  private static double angle(int tag) {
+    return Math.atan2(kTags[tag][0] - kRobotX, kTags[tag][1] - kRobotY) - kTheta;
+  }
+
+  @Test
+  void objectApiTakesPhotonYawInDegrees() {
+    CC4HTriangulationImplementation triangulation = new CC4HTriangulationImplementation();
+    Transform2d fromDegrees =
+        triangulation.calculateTriangulationVector(
+            triangulation.NastyInputInfoCavemanBrainedHack(
+                new Translation2d(kTags[0][0], kTags[0][1]), distance(0), Math.toDegrees(angle(0))),
+            triangulation.NastyInputInfoCavemanBrainedHack(
+                new Translation2d(kTags[1][0], kTags[1][1]), distance(1), Math.toDegrees(angle(1))));
+
+    CC4HTriangulationImplementation.CC4HTriangulationResult fromRadians =
+        new CC4HTriangulationImplementation.CC4HTriangulationResult();
+    CC4HTriangulationImplementation.solveTwoTag(
+        kTags[0][0], kTags[0][1], distance(0), angle(0),
+        kTags[1][0], kTags[1][1], distance(1), angle(1),
+        fromRadians);
+
+    assertTrue(fromRadians.valid);
+    assertEquals(fromRadians.x, fromDegrees.getX(), kEpsilon);
+    assertEquals(fromRadians.y, fromDegrees.getY(), kEpsilon);
+    assertEquals(fromRadians.theta, fromDegrees.getRotation().getRadians(), kEpsilon);
+  }
+
+  @Test
+  void objectApiReturnsNullForDegenerateTags() {
+    // Both tags straight ahead, one behind the other: no heading can be solved
+    CC4HTriangulationImplementation triangulation = new CC4HTriangulationImplementation();
+    Transform2d vector =
+        triangulation.calculateTriangulationVector(
+            triangulation.NastyInputInfoCavemanBrainedHack(new Translation2d(0.0, 2.0), 2.0, 0.0),
+            triangulation.NastyInputInfoCavemanBrainedHack(new Translation2d(0.0, 4.0), 4.0, 0.0));
+    assertNull(vector);
+  }
+
+  @Test
+  void polarVectorIsInRadians() {
+    CC4HTriangulationImplementation triangulation = new CC4HTriangulationImplementation();
+    CC4HTriangulationImplementation.TriangulationInputInfo info =
+        triangulation.NastyInputInfoCavemanBrainedHack(new Translation2d(0.0, 0.0), 2.0, 90.0);
+    assertEquals(Math.PI / 2, info.aprilTagDistanceAndYaw.theta, kEpsilon);
+
+    // 90 degrees to the right of forward is straight right
+    CC4HTriangulationImplementation.CC4HInternalCartesianVector local =
+        info.aprilTagDistanceAndYaw.convertPolarToCartesian();
+    assertEquals(2.0, local.x, kEpsilon);
+    assertEquals(0.0, local.y, kEpsilon);
+  }
+
+  @Test
+  void precomputedSolveMatchesAngleSolve() {
+    CC4HTriangulationImplementation.CC4HTriangulationResult fromAngles =
+        new CC4HTriangulationImplementation.CC4HTriangulationResult();
+    CC4HTriangulationImplementation.solveTwoTag(
+        kTags[0][0], kTags[0][1], distance(0), angle(0),
+        kTags[1][0], kTags[1][1], distance(1), angle(1),
+        fromAngles);
+
+    CC4HTriangulationImplementation.CC4HTriangulationResult fromSinCos =
+        new CC4HTriangulationImplementation.CC4HTriangulationResult();
+    CC4HTriangulationImplementation.solveTwoTag(
+        kTags[0][0], kTags[0][1], distance(0), Math.sin(angle(0)), Math.cos(angle(0)),
+        kTags[1][0], kTags[1][1], distance(1), Math.sin(angle(1)), Math.cos(angle(1)),
+        fromSinCos);
+
+    assertTrue(fromSinCos.valid);
+    assertEquals(fromAngles.x, fromSinCos.x, kEpsilon);
+    assertEquals(fromAngles.y, fromSinCos.y, kEpsilon);
+    assertEquals(fromAngles.theta, fromSinCos.theta, kEpsilon);
+  }
+
+  @Test
+  void twoTagHeadingIsSigned() {
+    // A robot at the origin, where the two-tag solve is exact, turned either way
+    for (double theta : new double[] {kTheta, -kTheta}) {
+      double[] range = new double[2];
+      double[] angle = new double[2];
+      for (int tag = 0; tag < 2; tag++) {
+        range[tag] = Math.hypot(kTags[tag][0], kTags[tag][1]);
+        angle[tag] = Math.atan2(kTags[tag][0], kTags[tag][1]) - theta;
+      }
+      CC4HTriangulationImplementation.CC4HTriangulationResult result =
+          new CC4HTriangulationImplementation.CC4HTriangulationResult();
+      CC4HTriangulationImplementation.solveTwoTag(
+          kTags[0][0], kTags[0][1], range[0], angle[0],
+          kTags[1][0], kTags[1][1], range[1], angle[1],
+          result);
+
+      assertTrue(result.valid);
+      assertEquals(theta, result.theta, kEpsilon);
+      assertEquals(0.0, result.x, kEpsilon);
+      assertEquals(0.0, result.y, kEpsilon);
+    }
+  }
+}
@@ -0,0 +1,79 @@
+package frc.robot;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import frc.robot.vision.VisionPoseSample;
+import org.junit.jupiter.api.Test;
+
+/** Checks that a vision pose is moved from its capture time to now by the odometry in between. */
+class RobotTest {
+  private static final double kEpsilon = 1e-9;
+
+  private final double[] m_out = new double[3];
+
+  /** A vision pose in the triangulation convention: x right, y forward, theta clockwise from +y. */
+  private static VisionPoseSample pose(double x, double y, double theta) {
+    VisionPoseSample sample = new VisionPoseSample();
+    sample.x = x;
+    sample.y = y;
+    sample.theta = theta;
+    return sample;
+  }
+
+  @Test
+  void noMotionLeavesThePoseAlone() {
+    double[] atCapture = {3.0, -1.0, 0.4};
+
+    Robot.compensateForLatency(pose(1.0, 2.0, 0.3), atCapture, 3.0, -1.0, 0.4, m_out);
+
+    assertEquals(1.0, m_out[0], kEpsilon);
+    assertEquals(2.0, m_out[1], kEpsilon);
+    assertEquals(0.3, m_out[2], kEpsilon);
+  }
+
+  @Test
+  void drivingForwardMovesAlongTheVisionHeading() {
+    // Odometry's own frame is turned 0.7 rad, the robot drives a meter along it
+    double[] atCapture = {0.0, 0.0, 0.7};
+
+    // Facing +x on the field (theta is clockwise from +y)
+    Robot.compensateForLatency(
+        pose(1.0, 2.0, Math.PI / 2), atCapture, Math.cos(0.7), Math.sin(0.7), 0.7, m_out);
+
+    assertEquals(2.0, m_out[0], kEpsilon);
+    assertEquals(2.0, m_out[1], kEpsilon);
+    assertEquals(Math.PI / 2, m_out[2], kEpsilon);
+  }
+
+  @Test
+  void movingLeftMovesToTheVisionLeft() {
+    double[] atCapture = {0.0, 0.0, 0.0};
+
+    // Facing +x on the field, so left is +y
+    Robot.compensateForLatency(pose(1.0, 2.0, Math.PI / 2), atCapture, 0.0, 0.5, 0.0, m_out);
+
+    assertEquals(1.0, m_out[0], kEpsilon);
+    assertEquals(2.5, m_out[1], kEpsilon);
+  }
+
+  @Test
+  void turningCounterclockwiseLowersTheClockwiseHeading() {
+    double[] atCapture = {0.0, 0.0, 1.0};
+
+    Robot.compensateForLatency(pose(1.0, 2.0, 0.3), atCapture, 0.0, 0.0, 1.2, m_out);
+
+    assertEquals(1.0, m_out[0], kEpsilon);
+    assertEquals(2.0, m_out[1], kEpsilon);
+    assertEquals(0.1, m_out[2], kEpsilon);
+  }
+
+  @Test
+  void headingIsWrapped() {
+    // Odometry's heading isn't wrapped, the history's is; the difference is still the turn
+    double[] atCapture = {0.0, 0.0, -Math.PI + 0.1};
+
+    Robot.compensateForLatency(pose(0.0, 0.0, -Math.PI + 0.05), atCapture, 0.0, 0.0, 3 * Math.PI + 0.2, m_out);
+
+    assertEquals(Math.PI - 0.05, m_out[2], kEpsilon);
+  }
+}
@@ -0,0 +1,83 @@
+package frc.robot.util;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/** Checks that old logs are deleted at startup so they can't fill the disk. */
+class LogDirectoryTest {
+  private Path m_directory;
+
+  @BeforeEach
+  void createDirectory() throws IOException {
+    m_directory = Files.createTempDirectory("logs");
+  }
+
+  @AfterEach
+  void deleteDirectory() throws IOException {
+    try (Stream<Path> files = Files.list(m_directory)) {
+      for (Path file : (Iterable<Path>) files::iterator) {
+        Files.delete(file);
+      }
+    }
+    Files.delete(m_directory);
+  }
+
+  private Path file(String name, int bytes, long modifiedMillis) throws IOException {
+    Path file = m_directory.resolve(name);
+    Files.write(file, new byte[bytes]);
+    Files.setLastModifiedTime(file, FileTime.fromMillis(modifiedMillis));
+    return file;
+  }
+
+  @Test
+  void oldestLogsAreDeletedUntilTheRestFit() throws IOException {
+    Path oldest = file("frames-1.bin", 100, 1_000);
+    Path older = file("frames-2.bin", 100, 2_000);
+    Path newer = file("frames-3.bin", 100, 3_000);
+    Path newest = file("frames-4.bin", 100, 4_000);
+
+    LogDirectory.deleteOldestLogs(m_directory, 250);
+
+    assertFalse(Files.exists(oldest));
+    assertFalse(Files.exists(older));
+    assertTrue(Files.exists(newer));
+    assertTrue(Files.exists(newest));
+  }
+
+  @Test
+  void telemetryLogsCountTowardsTheTotal() throws IOException {
+    Path oldTelemetry = file("telemetry-1.wpilog", 100, 1_000);
+    Path oldFrames = file("frames-2.bin", 100, 2_000);
+    Path telemetry = file("telemetry-3.wpilog", 100, 3_000);
+    Path frames = file("frames-4.bin", 100, 4_000);
+
+    LogDirectory.deleteOldestLogs(m_directory, 200);
+
+    assertFalse(Files.exists(oldTelemetry));
+    assertFalse(Files.exists(oldFrames));
+    assertTrue(Files.exists(telemetry));
+    assertTrue(Files.exists(frames));
+  }
+
+  @Test
+  void otherFilesAreKept() throws IOException {
+    Path other = file("notes.txt", 100, 1_000);
+    Path unrelated = file("calibration.bin", 100, 1_000);
+    Path log = file("frames-2.bin", 100, 2_000);
+
+    LogDirectory.deleteOldestLogs(m_directory, 0);
+
+    assertTrue(Files.exists(other));
+    assertTrue(Files.exists(unrelated));
+    assertFalse(Files.exists(log));
+  }
+}
@@ -0,0 +1,116 @@
+package frc.robot.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+/** Checks the odometry history lookups: interpolation, heading wraparound and the ring's edges. */
+class PoseHistoryBufferTest {
+  private static final double kEpsilon = 1e-9;
+
+  private final double[] m_out = new double[3];
+
+  @Test
+  void interpolatesBetweenSamples() {
+    PoseHistoryBuffer buffer = new PoseHistoryBuffer(8);
+    buffer.add(1.0, 0.0, 0.0, 0.0);
+    buffer.add(2.0, 2.0, -4.0, 1.0);
+
+    assertTrue(buffer.sample(1.25, m_out));
+    assertEquals(0.5, m_out[0], kEpsilon);
+    assertEquals(-1.0, m_out[1], kEpsilon);
+    assertEquals(0.25, m_out[2], kEpsilon);
+  }
+
+  @Test
+  void exactTimesReturnTheirSample() {
+    PoseHistoryBuffer buffer = new PoseHistoryBuffer(8);
+    for (int i = 0; i < 5; i++) {
+      buffer.add(i, 10.0 * i, 0.0, 0.0);
+    }
+
+    for (int i = 0; i < 5; i++) {
+      assertTrue(buffer.sample(i, m_out));
+      assertEquals(10.0 * i, m_out[0], kEpsilon);
+    }
+  }
+
+  @Test
+  void headingTurnsTheShortWayAcrossPi() {
+    PoseHistoryBuffer buffer = new PoseHistoryBuffer(8);
+    buffer.add(1.0, 0.0, 0.0, Math.PI - 0.1);
+    buffer.add(2.0, 0.0, 0.0, -Math.PI + 0.1);
+
+    // A quarter of the way through the 0.2 rad turn, still below pi
+    assertTrue(buffer.sample(1.25, m_out));
+    assertEquals(Math.PI - 0.05, m_out[2], kEpsilon);
+
+    // Past pi, wrapped back to the negative side
+    assertTrue(buffer.sample(1.75, m_out));
+    assertEquals(-Math.PI + 0.05, m_out[2], kEpsilon);
+  }
+
+  @Test
+  void newerThanTheLatestSampleReturnsIt() {
+    PoseHistoryBuffer buffer = new PoseHistoryBuffer(8);
+    buffer.add(1.0, 1.0, 2.0, 3.0);
+    buffer.add(2.0, 4.0, 5.0, 0.5);
+
+    assertTrue(buffer.sample(10.0, m_out));
+    assertEquals(4.0, m_out[0], kEpsilon);
+    assertEquals(5.0, m_out[1], kEpsilon);
+    assertEquals(0.5, m_out[2], kEpsilon);
+  }
+
+  @Test
+  void olderThanTheOldestSampleIsRejected() {
+    PoseHistoryBuffer buffer = new PoseHistoryBuffer(8);
+    assertFalse(buffer.sample(1.0, m_out));
+
+    buffer.add(1.0, 0.0, 0.0, 0.0);
+    buffer.add(2.0, 1.0, 0.0, 0.0);
+    assertFalse(buffer.sample(0.5, m_out));
+  }
+
+  @Test
+  void outOfOrderSamplesAreDropped() {
+    PoseHistoryBuffer buffer = new PoseHistoryBuffer(8);
+    assertTrue(buffer.add(2.0, 1.0, 0.0, 0.0));
+    assertFalse(buffer.add(1.0, 5.0, 0.0, 0.0));
+    assertFalse(buffer.add(2.0, 5.0, 0.0, 0.0));
+
+    assertEquals(1, buffer.size());
+    assertTrue(buffer.sample(2.0, m_out));
+    assertEquals(1.0, m_out[0], kEpsilon);
+  }
+
+  @Test
+  void wrappedRingKeepsTheNewestSamples() {
+    PoseHistoryBuffer buffer = new PoseHistoryBuffer(4);
+    for (int i = 0; i < 11; i++) {
+      buffer.add(i, i, 0.0, 0.0);
+    }
+
+    assertEquals(4, buffer.size());
+    // Samples 0 to 6 were overwritten
+    assertFalse(buffer.sample(6.5, m_out));
+    assertTrue(buffer.sample(7.0, m_out));
+    assertEquals(7.0, m_out[0], kEpsilon);
+    assertTrue(buffer.sample(8.5, m_out));
+    assertEquals(8.5, m_out[0], kEpsilon);
+    assertTrue(buffer.sample(9.75, m_out));
+    assertEquals(9.75, m_out[0], kEpsilon);
+  }
+
+  @Test
+  void capacityIsRoundedUpToAPowerOfTwo() {
+    PoseHistoryBuffer buffer = new PoseHistoryBuffer(5);
+    for (int i = 0; i < 20; i++) {
+      buffer.add(i, i, 0.0, 0.0);
+    }
+
+    assertEquals(8, buffer.size());
+  }
+}
@@ -0,0 +1,93 @@
+package frc.robot.util;
+
+import static frc.robot.Allocations.assertAllocates;
+
+import edu.wpi.first.networktables.NetworkTableInstance;
+import edu.wpi.first.util.datalog.DataLog;
+import frc.robot.Allocations;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks that the telemetry written every loop doesn't allocate (see {@link Allocations}). The
+ * once-a-second publishes are run on every call, with a clock that jumps a second each time.
+ */
+class TelemetryAllocationTest {
+  private static final long kSecondNanos = 1_000_000_000L;
+
+  @BeforeAll
+  static void setup() {
+    Allocations.assumeMeasurable();
+  }
+
+  @Test
+  void stageTimerDoesNotAllocate() {
+    StageTimer timer = new StageTimer("Check", "First", "Second");
+    long[] now = new long[1];
+    assertAllocates(
+        "StageTimer start + mark + finish + publishIfDue",
+        0,
+        () -> {
+          timer.start();
+          timer.mark(0);
+          timer.mark(1);
+          timer.finish();
+          timer.publishIfDue(now[0] += kSecondNanos);
+        });
+  }
+
+  @Test
+  void doubleTelemetryDoesNotAllocate() {
+    try (DoubleTelemetry telemetry = new DoubleTelemetry("Check/Double")) {
+      double[] value = new double[1];
+      // A new value every call, so every call is published
+      assertAllocates("DoubleTelemetry.set", 0, () -> telemetry.set(value[0]++));
+    }
+  }
+
+  @Test
+  void stringTelemetryDoesNotAllocate() {
+    try (StringTelemetry telemetry = new StringTelemetry("Check/String")) {
+      boolean[] toggle = new boolean[1];
+      assertAllocates(
+          "StringTelemetry.set",
+          0,
+          () -> telemetry.set((toggle[0] = !toggle[0]) ? "Target detected." : "No target detected."));
+    }
+  }
+
+  @Test
+  void telemetryLogAppendDoesNotAllocate() throws IOException {
+    Path directory = Files.createTempDirectory("telemetry");
+    DataLog dataLog = new DataLog(directory.toString(), "check.wpilog");
+    try (TelemetryLog log = new TelemetryLog(dataLog, 1024, 8)) {
+      int entry = log.addEntry("check", "");
+      double[] values = {1.0, 2.0, 3.0, 4.0};
+      // Faster than the writer drains it, so both the queued and the dropped paths are measured
+      assertAllocates("TelemetryLog.append", 0, () -> log.append(entry, values, values.length));
+    } finally {
+      dataLog.close();
+    }
+  }
+
+  @Test
+  void metricsPublishDoesNotAllocate() throws IOException {
+    try (MetricsRegistry metrics = new MetricsRegistry()) {
+      MetricsRegistry.Counter counter = metrics.counter("check/counter");
+      MetricsRegistry.Gauge gauge = metrics.gauge("check/gauge");
+      metrics.start(NetworkTableInstance.getDefault().getTable("CheckMetrics"), 0);
+      long[] now = new long[1];
+      assertAllocates(
+          "MetricsRegistry.publishIfDue",
+          0,
+          () -> {
+            counter.increment();
+            gauge.set(counter.get());
+            metrics.publishIfDue(now[0] += kSecondNanos);
+          });
+    }
+  }
+}
@@ -0,0 +1,226 @@
+package frc.robot.vision;
+
+import static frc.robot.Allocations.assertAllocates;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import edu.wpi.first.apriltag.AprilTagFieldLayout;
+import edu.wpi.first.hal.HAL;
+import edu.wpi.first.math.geometry.Transform3d;
+import frc.robot.Allocations;
+import frc.robot.CC4HTriangulationImplementation;
+import frc.robot.Constants.DriveConstants;
+import frc.robot.Constants.VisionConstants;
+import frc.robot.subsystems.DrivetrainSubsystem;
+import frc.robot.util.LatencyHistogram;
+import frc.robot.util.MetricsRegistry;
+import frc.robot.util.PoseHistoryBuffer;
+import java.io.IOException;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.photonvision.targeting.PhotonPipelineResult;
+
+/** Checks that the per-frame and per-loop hot paths don't allocate (see {@link Allocations}). */
+class AllocationTest {
+  private static final String kLayoutFile = "src/main/deploy/fieldlayout.json";
+
+  // A four tag square and slightly noisy observations of it
+  private static final double[] kAbsoluteX = {0.5, -0.5, -0.5, 0.5};
+  private static final double[] kAbsoluteY = {2.5, 2.5, 3.5, 3.5};
+  private static final double[] kLocalX = {0.45, -0.55, -0.52, 0.48};
+  private static final double[] kLocalY = {2.52, 2.49, 3.51, 3.47};
+  private static final double[] kAmbiguity = {0.05, 0.05, 0.1, 0.02};
+
+  private static FieldLayout s_fieldLayout;
+  private static PhotonPipelineResult[] s_frames;
+
+  private final CC4HTriangulationImplementation.CC4HTriangulationResult m_result =
+      new CC4HTriangulationImplementation.CC4HTriangulationResult();
+  private final VisionPoseSample m_sample = new VisionPoseSample();
+
+  @BeforeAll
+  static void setup() throws IOException {
+    Allocations.assumeMeasurable();
+
+    s_fieldLayout = new FieldLayout(new AprilTagFieldLayout(kLayoutFile));
+
+    // Two synthetic frames with different timestamps, so the frame cache never skips the solve
+    SyntheticFrameSource synthetic =
+        new SyntheticFrameSource("Check", s_fieldLayout, VisionConstants.kRobotToCameras[0], 1);
+    ScriptedTrajectory trajectory = VisionSimulation.createTrajectory(s_fieldLayout);
+    double[] pose = new double[3];
+    s_frames = new PhotonPipelineResult[2];
+    for (int i = 0; i < s_frames.length; i++) {
+      trajectory.sample(i, pose);
+      synthetic.update(pose[0], pose[1], pose[2], i, VisionConstants.kSimLatencyMillis);
+      s_frames[i] = synthetic.getLatestResult();
+    }
+  }
+
+  @Test
+  void frameSolverSolveDoesNotAllocate() {
+    FrameSolver frameSolver = new FrameSolver(s_fieldLayout, VisionConstants.kRobotToCameras[0]);
+    int[] frameIndex = new int[1];
+    assertAllocates("FrameSolver.solve", 0, () -> frameSolver.solve(s_frames[frameIndex[0] ^= 1], m_sample));
+  }
+
+  @Test
+  void cameraSetUpdateAndSolveDoNotAllocate() {
+    int[] frameIndex = new int[1];
+    FrameSource alternating =
+        new FrameSource() {
+          @Override
+          public String getName() {
+            return "Check";
+          }
+
+          @Override
+          public PhotonPipelineResult getLatestResult() {
+            frameIndex[0] ^= 1;
+            return s_frames[frameIndex[0]];
+          }
+        };
+    try (CameraSet cameras =
+        new CameraSet(
+            new FrameSource[] {alternating},
+            new Transform3d[] {VisionConstants.kRobotToCameras[0]},
+            s_fieldLayout)) {
+      assertAllocates(
+          "CameraSet.update + solve",
+          0,
+          () -> {
+            cameras.update();
+            cameras.solve(m_sample);
+          });
+    }
+  }
+
+  @Test
+  void solveTwoTagDoesNotAllocate() {
+    assertAllocates(
+        "solveTwoTag",
+        0,
+        () ->
+            CC4HTriangulationImplementation.solveTwoTag(
+                kAbsoluteX[0], kAbsoluteY[0], 2.55, 0.18, kAbsoluteX[1], kAbsoluteY[1], 2.56, -0.21, m_result));
+  }
+
+  @Test
+  void solveLeastSquaresDoesNotAllocate() {
+    assertAllocates(
+        "solveLeastSquares",
+        0,
+        () -> CC4HTriangulationImplementation.solveLeastSquares(kAbsoluteX, kAbsoluteY, kLocalX, kLocalY, 4, m_result));
+  }
+
+  @Test
+  void solveSingleTagDoesNotAllocate() {
+    assertAllocates(
+        "solveSingleTag",
+        0,
+        () ->
+            CC4HTriangulationImplementation.solveSingleTag(
+                kAbsoluteX[0], kAbsoluteY[0], -Math.PI / 2, kLocalX[0], kLocalY[0], -Math.PI / 2, 0.05, 0.2, 3.0, m_result));
+  }
+
+  @Test
+  void ransacDoesNotAllocate() {
+    RansacPoseEstimator ransac =
+        new RansacPoseEstimator(VisionConstants.kRansacBudgetMicros, VisionConstants.kRansacInlierThresholdMeters);
+    assertAllocates(
+        "RansacPoseEstimator.estimate",
+        0,
+        () -> ransac.estimate(kAbsoluteX, kAbsoluteY, kLocalX, kLocalY, kAmbiguity, 4, m_result));
+  }
+
+  @Test
+  void poseFilterDoesNotAllocate() {
+    PoseKalmanFilter filter =
+        new PoseKalmanFilter(DriveConstants.kOdometryPositionNoisePerMeter, DriveConstants.kOdometryHeadingNoisePerMeter);
+    assertAllocates(
+        "PoseKalmanFilter predict + update",
+        0,
+        () -> {
+          filter.predict(0.02, 0.0, 0.001);
+          filter.update(m_sample, 0.1, 0.2, 0.05);
+        });
+  }
+
+  @Test
+  void poseHistoryDoesNotAllocate() {
+    PoseHistoryBuffer history = new PoseHistoryBuffer(DriveConstants.kPoseHistoryCapacity);
+    double[] time = new double[1];
+    double[] historySample = new double[3];
+    assertAllocates(
+        "PoseHistoryBuffer add + sample",
+        0,
+        () -> {
+          time[0] += 0.02;
+          history.add(time[0], time[0], 0.0, 0.0);
+          history.sample(time[0] - 0.1, historySample);
+        });
+  }
+
+  @Test
+  void poseHandoffDoesNotAllocate() {
+    PoseHandoff handoff = new PoseHandoff();
+    double[] x = new double[1];
+    assertAllocates(
+        "PoseHandoff publish + read",
+        0,
+        () -> {
+          handoff.beginWrite().sequence++;
+          handoff.publish();
+          if (handoff.update()) {
+            x[0] = handoff.get().x;
+          }
+        });
+  }
+
+  @Test
+  void latestTargetDoesNotAllocate() {
+    LatestTarget latestTarget = new LatestTarget();
+    LatestTarget.Reading reading = new LatestTarget.Reading();
+    assertAllocates(
+        "LatestTarget write + read",
+        0,
+        () -> {
+          latestTarget.write(reading.frame + 1, 1.0, true, 2.0);
+          latestTarget.read(reading);
+        });
+  }
+
+  @Test
+  void latencyHistogramDoesNotAllocate() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    assertAllocates("LatencyHistogram.record", 0, () -> histogram.record(12_345));
+  }
+
+  @Test
+  void metricsDoNotAllocate() {
+    MetricsRegistry metrics = new MetricsRegistry();
+    MetricsRegistry.Counter counter = metrics.counter("check/counter");
+    MetricsRegistry.Gauge gauge = metrics.gauge("check/gauge");
+    assertAllocates(
+        "MetricsRegistry counter + gauge",
+        0,
+        () -> {
+          counter.increment();
+          gauge.set(counter.get());
+        });
+  }
+
+  @Test
+  void arcadeDriveDoesNotAllocate() {
+    assertTrue(HAL.initialize(500, 0));
+    DrivetrainSubsystem drivetrain = new DrivetrainSubsystem();
+    double[] speed = new double[1];
+    // A new setpoint every call, so every call does the inverse kinematics and writes the motors
+    assertAllocates(
+        "DrivetrainSubsystem.arcadeDrive",
+        0,
+        () -> {
+          speed[0] = speed[0] > 0.9 ? -0.9 : speed[0] + 0.1;
+          drivetrain.arcadeDrive(speed[0], 0.5 * speed[0]);
+        });
+  }
+}
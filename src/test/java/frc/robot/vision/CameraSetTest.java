@@ -0,0 +1,173 @@
+package frc.robot.vision;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import edu.wpi.first.apriltag.AprilTag;
+import edu.wpi.first.apriltag.AprilTagFieldLayout;
+import edu.wpi.first.math.geometry.Pose3d;
+import edu.wpi.first.math.geometry.Rotation3d;
+import edu.wpi.first.math.geometry.Transform3d;
+import edu.wpi.first.math.geometry.Translation3d;
+import frc.robot.Constants.VisionConstants;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.photonvision.targeting.PhotonPipelineResult;
+import org.photonvision.targeting.PhotonTrackedTarget;
+import org.photonvision.targeting.TargetCorner;
+
+/** Checks how frames from several cameras are merged: which ones, at what time, and the target yaw. */
+class CameraSetTest {
+  private static final double kEpsilon = 1e-9;
+  private static final List<TargetCorner> kCorners =
+      List.of(new TargetCorner(0, 0), new TargetCorner(1, 0), new TargetCorner(1, 1), new TargetCorner(0, 1));
+  // The robot is at the origin facing +x, so a tag at (x, y) is seen x forward and y left
+  private static final double[][] kTagPositions = {
+    {2.0, 1.0}, {2.0, -1.0}, {2.0, 2.0}, {2.0, -2.0}, {6.0, 1.0}, {6.0, -1.0}, {6.0, 3.0}, {6.0, -3.0}
+  };
+  private static final FieldLayout kFieldLayout = new FieldLayout(new AprilTagFieldLayout(tags(), 16.5, 8.0));
+
+  private static List<AprilTag> tags() {
+    List<AprilTag> tags = new ArrayList<>();
+    for (int i = 0; i < kTagPositions.length; i++) {
+      tags.add(
+          new AprilTag(
+              i + 1,
+              new Pose3d(new Translation3d(kTagPositions[i][0], kTagPositions[i][1], 0.5), new Rotation3d(0, 0, Math.PI))));
+    }
+    return tags;
+  }
+
+  /** A camera that always returns the same frame. */
+  private static FrameSource source(PhotonPipelineResult result) {
+    return new FrameSource() {
+      @Override
+      public String getName() {
+        return "test";
+      }
+
+      @Override
+      public PhotonPipelineResult getLatestResult() {
+        return result;
+      }
+    };
+  }
+
+  /** A tag at a camera-relative position (x forward, y left). */
+  private static PhotonTrackedTarget target(int id, double yawDegrees, double forward, double left) {
+    Transform3d cameraToTarget = new Transform3d(new Translation3d(forward, left, 0.0), new Rotation3d(0, 0, Math.PI));
+    return new PhotonTrackedTarget(yawDegrees, 0.0, 1.0, 0.0, id, cameraToTarget, cameraToTarget, 0.05, kCorners, kCorners);
+  }
+
+  /** A frame with one tag at a camera-relative position (x forward, y left). */
+  private static PhotonPipelineResult frame(double timestampSeconds, int id, double yawDegrees, double forward, double left) {
+    return frame(timestampSeconds, List.of(target(id, yawDegrees, forward, left)));
+  }
+
+  /** A frame with the given tags, as seen by a camera at the robot's origin. */
+  private static PhotonPipelineResult frameWithTags(double timestampSeconds, int... ids) {
+    List<PhotonTrackedTarget> targets = new ArrayList<>();
+    for (int id : ids) {
+      double[] position = kTagPositions[id - 1];
+      targets.add(target(id, Math.toDegrees(-Math.atan2(position[1], position[0])), position[0], position[1]));
+    }
+    return frame(timestampSeconds, targets);
+  }
+
+  private static PhotonPipelineResult frame(double timestampSeconds, List<PhotonTrackedTarget> targets) {
+    PhotonPipelineResult result = new PhotonPipelineResult(20.0, targets);
+    result.setTimestampSeconds(timestampSeconds);
+    return result;
+  }
+
+  private static VisionPoseSample solve(PhotonPipelineResult first, PhotonPipelineResult second) {
+    Transform3d forward = new Transform3d();
+    try (CameraSet cameras =
+        new CameraSet(new FrameSource[] {source(first), source(second)}, new Transform3d[] {forward, forward}, kFieldLayout)) {
+      cameras.update();
+      VisionPoseSample sample = new VisionPoseSample();
+      cameras.solve(sample);
+      return sample;
+    }
+  }
+
+  @Test
+  void framesCapturedTogetherAreMerged() {
+    double offset = VisionConstants.kCameraMergeWindowSeconds / 2;
+    VisionPoseSample sample = solve(frame(10.0, 1, -26.6, 2.0, 1.0), frame(10.0 + offset, 2, 26.6, 2.0, -1.0));
+
+    assertEquals(2, sample.tagCount);
+    assertTrue(sample.valid);
+    // The newest frame's time, not an average the robot was never at
+    assertEquals(10.0 + offset, sample.timestampSeconds, kEpsilon);
+  }
+
+  @Test
+  void framesTooFarApartAreNotMerged() {
+    double offset = 2 * VisionConstants.kCameraMergeWindowSeconds;
+    VisionPoseSample sample = solve(frame(10.0 + offset, 1, -26.6, 2.0, 1.0), frame(10.0, 2, 26.6, 2.0, -1.0));
+
+    assertEquals(1, sample.tagCount);
+    assertEquals(10.0 + offset, sample.timestampSeconds, kEpsilon);
+    assertEquals(1, sample.bestId);
+  }
+
+  @Test
+  void mergedTagsAreRankedAcrossCameras() {
+    // The first camera sees the far tags, the second the near ones; taking the tags in camera order
+    // would solve all the far tags and only two of the near ones
+    VisionPoseSample sample = solve(frameWithTags(10.0, 5, 6, 7, 8), frameWithTags(10.0, 1, 2, 3, 4));
+
+    assertEquals(VisionConstants.kMaxTags, sample.tagCount);
+    assertTrue(sample.valid);
+    double near = 2 * Math.hypot(2.0, 1.0) + 2 * Math.hypot(2.0, 2.0);
+    double nearestFar = 2 * Math.hypot(6.0, 1.0);
+    assertEquals((near + nearestFar) / VisionConstants.kMaxTags, sample.meanDistance, kEpsilon);
+  }
+
+  @Test
+  void meanDistanceLeavesOutRejectedTags() {
+    // Tag 4 misdetected a meter and a half further away than it is; the other camera's frame is too
+    // old to merge
+    List<PhotonTrackedTarget> targets = new ArrayList<>(frameWithTags(10.0, 1, 2, 3).getTargets());
+    targets.add(target(4, 0.0, 3.5, -2.0));
+    VisionPoseSample sample = solve(frame(10.0, targets), frameWithTags(9.0, 5));
+
+    assertTrue(sample.valid);
+    assertEquals(1, sample.rejectedTags);
+    double inliers = 2 * Math.hypot(2.0, 1.0) + Math.hypot(2.0, 2.0);
+    assertEquals(inliers / 3, sample.meanDistance, kEpsilon);
+  }
+
+  @Test
+  void bestYawIsRobotRelative() {
+    // A camera on the robot's left side, looking left, sees a tag straight ahead of it
+    Transform3d robotToCamera = new Transform3d(new Translation3d(0.0, 0.3, 0.5), new Rotation3d(0, 0, Math.PI / 2));
+    try (CameraSet cameras =
+        new CameraSet(
+            new FrameSource[] {source(frame(10.0, 1, 0.0, 2.0, 0.0))}, new Transform3d[] {robotToCamera}, kFieldLayout)) {
+      cameras.update();
+      VisionPoseSample sample = new VisionPoseSample();
+      cameras.solve(sample);
+
+      assertTrue(sample.hasTargets);
+      assertEquals(-90.0, sample.bestYaw, kEpsilon);
+    }
+  }
+
+  @Test
+  void bestYawWithoutATargetPositionUsesTheCameraYaw() {
+    // 2D pipelines report no camera-to-target translation, only the target's yaw
+    Transform3d robotToCamera = new Transform3d(new Translation3d(), new Rotation3d(0, 0, -Math.PI / 6));
+    try (CameraSet cameras =
+        new CameraSet(
+            new FrameSource[] {source(frame(10.0, 1, 10.0, 0.0, 0.0))}, new Transform3d[] {robotToCamera}, kFieldLayout)) {
+      cameras.update();
+      VisionPoseSample sample = new VisionPoseSample();
+      cameras.solve(sample);
+
+      assertEquals(40.0, sample.bestYaw, kEpsilon);
+    }
+  }
+}
@@ -0,0 +1,43 @@
+package frc.robot.vision;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import edu.wpi.first.apriltag.AprilTag;
+import edu.wpi.first.apriltag.AprilTagFieldLayout;
+import edu.wpi.first.math.geometry.Pose3d;
+import edu.wpi.first.math.geometry.Rotation3d;
+import edu.wpi.first.math.geometry.Translation3d;
+import frc.robot.Constants.VisionConstants;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+/** Checks what the tag lookups hold, including when the layout file is missing. */
+class FieldLayoutTest {
+  @Test
+  void tagsAreCopied() {
+    FieldLayout layout =
+        new FieldLayout(
+            new AprilTagFieldLayout(
+                List.of(new AprilTag(3, new Pose3d(new Translation3d(1.0, 2.0, 0.5), new Rotation3d(0, 0, 0.25)))),
+                16.5,
+                8.0));
+
+    assertTrue(layout.hasTag(3));
+    assertFalse(layout.hasTag(4));
+    assertEquals(1.0, layout.getX(3));
+    assertEquals(2.0, layout.getY(3));
+    assertEquals(0.5, layout.getZ(3));
+    assertEquals(0.25, layout.getYaw(3));
+  }
+
+  @Test
+  void missingFileGivesAnEmptyLayout() {
+    // Not the built-in field: a layout for the wrong field would put the robot in the wrong place
+    FieldLayout layout = FieldLayout.loadFromDeploy("missing-fieldlayout.json");
+    for (int id = 0; id <= VisionConstants.kMaxFiducialId; id++) {
+      assertFalse(layout.hasTag(id), "Tag " + id);
+    }
+  }
+}
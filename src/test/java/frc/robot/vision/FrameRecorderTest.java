@@ -0,0 +1,162 @@
+package frc.robot.vision;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import edu.wpi.first.math.geometry.Quaternion;
+import edu.wpi.first.math.geometry.Rotation3d;
+import edu.wpi.first.math.geometry.Transform3d;
+import edu.wpi.first.math.geometry.Translation3d;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.photonvision.targeting.PhotonPipelineResult;
+import org.photonvision.targeting.PhotonTrackedTarget;
+import org.photonvision.targeting.TargetCorner;
+
+/** Pins the frame log format: what FrameRecorder writes is what FrameReplay reads back. */
+class FrameRecorderTest {
+  private static final double kEpsilon = 1e-12;
+  private static final int kCapacityBytes = 64 * 1024;
+  private static final List<TargetCorner> kCorners =
+      List.of(new TargetCorner(0, 0), new TargetCorner(1, 0), new TargetCorner(1, 1), new TargetCorner(0, 1));
+
+  private Path m_file;
+
+  @BeforeEach
+  void createFile() throws IOException {
+    m_file = Files.createTempFile("frames-", ".bin");
+  }
+
+  @AfterEach
+  void deleteFile() throws IOException {
+    Files.deleteIfExists(m_file);
+  }
+
+  private static PhotonTrackedTarget target(int id, double yaw, double x, double y, double z, double rotation) {
+    Transform3d cameraToTarget = new Transform3d(new Translation3d(x, y, z), new Rotation3d(0, 0, rotation));
+    return new PhotonTrackedTarget(yaw, yaw / 2, 0.5 + id, 0.0, id, cameraToTarget, cameraToTarget, 0.01 * id, kCorners, kCorners);
+  }
+
+  private static PhotonPipelineResult frame(double timestamp, PhotonTrackedTarget... targets) {
+    PhotonPipelineResult result = new PhotonPipelineResult(25.0, List.of(targets));
+    result.setTimestampSeconds(timestamp);
+    return result;
+  }
+
+  /** Three frames: two cameras in cycle 1 (one of them without targets), one camera in cycle 2. */
+  private static List<PhotonPipelineResult> recordFrames(FrameRecorder recorder) {
+    List<PhotonPipelineResult> frames = new ArrayList<>();
+    frames.add(frame(1.25, target(3, -12.5, 2.0, 0.5, 0.3, 3.0), target(7, 8.0, 3.5, -1.0, 0.4, -2.5)));
+    frames.add(frame(1.26));
+    frames.add(frame(1.30, target(4, 1.5, 1.0, 0.1, 0.2, 0.5)));
+    recorder.record(1, 0, frames.get(0));
+    recorder.record(1, 1, frames.get(1));
+    recorder.record(2, 0, frames.get(2));
+    return frames;
+  }
+
+  private static void assertSameTarget(PhotonTrackedTarget expected, PhotonTrackedTarget actual) {
+    assertEquals(expected.getFiducialId(), actual.getFiducialId());
+    assertEquals(expected.getYaw(), actual.getYaw(), kEpsilon);
+    assertEquals(expected.getPitch(), actual.getPitch(), kEpsilon);
+    assertEquals(expected.getArea(), actual.getArea(), kEpsilon);
+    assertEquals(expected.getPoseAmbiguity(), actual.getPoseAmbiguity(), kEpsilon);
+
+    Transform3d expectedTransform = expected.getBestCameraToTarget();
+    Transform3d actualTransform = actual.getBestCameraToTarget();
+    assertEquals(expectedTransform.getX(), actualTransform.getX(), kEpsilon);
+    assertEquals(expectedTransform.getY(), actualTransform.getY(), kEpsilon);
+    assertEquals(expectedTransform.getZ(), actualTransform.getZ(), kEpsilon);
+    Quaternion expectedRotation = expectedTransform.getRotation().getQuaternion();
+    Quaternion actualRotation = actualTransform.getRotation().getQuaternion();
+    assertEquals(expectedRotation.getW(), actualRotation.getW(), 1e-9);
+    assertEquals(expectedRotation.getX(), actualRotation.getX(), 1e-9);
+    assertEquals(expectedRotation.getY(), actualRotation.getY(), 1e-9);
+    assertEquals(expectedRotation.getZ(), actualRotation.getZ(), 1e-9);
+  }
+
+  @Test
+  void recordedFramesReadBackTheSame() throws IOException {
+    List<PhotonPipelineResult> recorded;
+    try (FrameRecorder recorder = new FrameRecorder(m_file, kCapacityBytes)) {
+      recorded = recordFrames(recorder);
+      assertEquals(3, recorder.getRecordedFrames());
+    }
+
+    List<FrameReplay.RecordedFrame> frames = FrameReplay.readLog(m_file);
+    assertEquals(3, frames.size());
+    long[] cycles = {1, 1, 2};
+    int[] cameras = {0, 1, 0};
+    for (int i = 0; i < frames.size(); i++) {
+      FrameReplay.RecordedFrame frame = frames.get(i);
+      PhotonPipelineResult expected = recorded.get(i);
+      assertEquals(cycles[i], frame.cycle);
+      assertEquals(cameras[i], frame.cameraIndex);
+      assertEquals(expected.getTimestampSeconds(), frame.result.getTimestampSeconds(), kEpsilon);
+      assertEquals(expected.getLatencyMillis(), frame.result.getLatencyMillis(), kEpsilon);
+      assertEquals(expected.getTargets().size(), frame.result.getTargets().size());
+      for (int j = 0; j < expected.getTargets().size(); j++) {
+        assertSameTarget(expected.getTargets().get(j), frame.result.getTargets().get(j));
+      }
+    }
+  }
+
+  @Test
+  void recordCutShortByPowerLossIsDropped() throws IOException {
+    try (FrameRecorder recorder = new FrameRecorder(m_file, kCapacityBytes)) {
+      recordFrames(recorder);
+    }
+
+    // The length is written last, so a record whose length never made it to the disk reads as zero
+    long lastRecord =
+        FrameRecorder.kHeaderBytes + FrameRecorder.kFrameBytes + 2 * FrameRecorder.kTargetBytes + FrameRecorder.kFrameBytes;
+    try (RandomAccessFile file = new RandomAccessFile(m_file.toFile(), "rw")) {
+      file.seek(lastRecord);
+      file.writeInt(0);
+    }
+
+    List<FrameReplay.RecordedFrame> frames = FrameReplay.readLog(m_file);
+    assertEquals(2, frames.size());
+    assertEquals(1, frames.get(1).cycle);
+  }
+
+  @Test
+  void truncatedFileDropsTheLastRecord() throws IOException {
+    try (FrameRecorder recorder = new FrameRecorder(m_file, kCapacityBytes)) {
+      recordFrames(recorder);
+    }
+
+    // A copy of the log that ends in the middle of the last record
+    long end =
+        FrameRecorder.kHeaderBytes
+            + FrameRecorder.kFrameBytes + 2 * FrameRecorder.kTargetBytes
+            + FrameRecorder.kFrameBytes
+            + FrameRecorder.kFrameBytes + FrameRecorder.kTargetBytes / 2;
+    try (RandomAccessFile file = new RandomAccessFile(m_file.toFile(), "rw")) {
+      file.setLength(end);
+    }
+
+    List<FrameReplay.RecordedFrame> frames = FrameReplay.readLog(m_file);
+    assertEquals(2, frames.size());
+    assertEquals(2, frames.get(0).result.getTargets().size());
+    assertEquals(1, frames.get(1).cycle);
+  }
+
+  @Test
+  void framesThatDoNotFitAreDroppedAndCounted() throws IOException {
+    // Room for the header and the first record only, plus the end marker
+    int capacity = FrameRecorder.kHeaderBytes + FrameRecorder.kFrameBytes + 2 * FrameRecorder.kTargetBytes + 4;
+    try (FrameRecorder recorder = new FrameRecorder(m_file, capacity)) {
+      recordFrames(recorder);
+      assertEquals(1, recorder.getRecordedFrames());
+      assertEquals(2, recorder.getDroppedFrames());
+    }
+    assertEquals(1, FrameReplay.readLog(m_file).size());
+  }
+}
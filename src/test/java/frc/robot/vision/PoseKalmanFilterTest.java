@@ -0,0 +1,85 @@
+package frc.robot.vision;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+/** Checks that the filter converges on vision, grows its uncertainty on odometry and wraps the heading. */
+class PoseKalmanFilterTest {
+  private static final double kPositionNoisePerMeter = 0.02;
+  private static final double kHeadingNoisePerMeter = 0.01;
+
+  private static PoseKalmanFilter filter() {
+    return new PoseKalmanFilter(kPositionNoisePerMeter, kHeadingNoisePerMeter);
+  }
+
+  @Test
+  void convergesToAConstantVisionPose() {
+    // Started from a poor first guess
+    PoseKalmanFilter filter = filter();
+    filter.update(0.0, 0.0, 0.0, 10.0, 10.0);
+
+    for (int i = 0; i < 200; i++) {
+      filter.predict(0.0, 0.0, 0.0);
+      filter.update(3.0, -2.0, 1.0, 0.5, 0.5);
+    }
+
+    assertEquals(3.0, filter.getX(), 1e-3);
+    assertEquals(-2.0, filter.getY(), 1e-3);
+    assertEquals(1.0, filter.getTheta(), 1e-3);
+    assertTrue(filter.getPositionStdDev() < 0.5);
+  }
+
+  @Test
+  void predictingAloneGrowsTheUncertainty() {
+    PoseKalmanFilter filter = filter();
+    filter.update(0.0, 0.0, 0.0, 0.1, 0.1);
+
+    double previous = filter.getPositionStdDev();
+    for (int i = 0; i < 50; i++) {
+      filter.predict(0.1, 0.0, 0.01);
+      double stdDev = filter.getPositionStdDev();
+      assertTrue(stdDev > previous);
+      previous = stdDev;
+    }
+  }
+
+  @Test
+  void predictIsIgnoredUntilTheFirstVisionPose() {
+    PoseKalmanFilter filter = filter();
+    filter.predict(1.0, 0.0, 0.5);
+
+    assertFalse(filter.isInitialized());
+    filter.update(1.0, 2.0, 0.0, 0.1, 0.1);
+    assertEquals(1.0, filter.getX(), 0.0);
+    assertEquals(2.0, filter.getY(), 0.0);
+  }
+
+  @Test
+  void headingStaysWrappedWhileTurning() {
+    PoseKalmanFilter filter = filter();
+    filter.update(0.0, 0.0, 3.0, 0.1, 0.1);
+
+    // Ten full turns clockwise (odometry reports counterclockwise changes)
+    for (int i = 0; i < 200; i++) {
+      filter.predict(0.0, 0.0, -Math.PI / 10);
+      assertTrue(Math.abs(filter.getTheta()) <= Math.PI);
+    }
+    assertEquals(3.0, filter.getTheta(), 1e-9);
+  }
+
+  @Test
+  void headingStaysWrappedAcrossPi() {
+    PoseKalmanFilter filter = filter();
+    filter.update(0.0, 0.0, Math.PI - 0.05, 0.1, 0.1);
+
+    // Vision just past pi, the short way round: the estimate crosses over instead of swinging back
+    for (int i = 0; i < 50; i++) {
+      filter.update(0.0, 0.0, -Math.PI + 0.05, 0.1, 0.1);
+      assertTrue(Math.abs(filter.getTheta()) <= Math.PI);
+    }
+    assertEquals(-Math.PI + 0.05, filter.getTheta(), 1e-2);
+  }
+}
@@ -0,0 +1,131 @@
+package frc.robot.vision;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import frc.robot.CC4HTriangulationImplementation;
+import frc.robot.Constants.VisionConstants;
+import org.junit.jupiter.api.Test;
+
+/** Checks that outliers are rejected, clean input is fit as is, and sampling stops when it should. */
+class RansacPoseEstimatorTest {
+  private static final double kEpsilon = 1e-9;
+  private static final long kBudgetMicros = 1_000_000;
+
+  // A robot at (1.5, 2.0), turned 0.4 rad from the field's axes, looking at six tags
+  private static final double kRobotX = 1.5;
+  private static final double kRobotY = 2.0;
+  private static final double kRotation = 0.4;
+  private static final double[] kAbsoluteX = {0.0, 1.0, 3.0, 4.0, 2.5, -0.5};
+  private static final double[] kAbsoluteY = {5.0, 6.0, 5.5, 4.0, 7.0, 4.5};
+  private static final double[] kUnambiguous = {0.1, 0.1, 0.1, 0.1, 0.1, 0.1};
+
+  private final double[] m_localX = new double[kAbsoluteX.length];
+  private final double[] m_localY = new double[kAbsoluteX.length];
+  private final CC4HTriangulationImplementation.CC4HTriangulationResult m_result =
+      new CC4HTriangulationImplementation.CC4HTriangulationResult();
+  private final CC4HTriangulationImplementation.CC4HTriangulationResult m_expected =
+      new CC4HTriangulationImplementation.CC4HTriangulationResult();
+
+  /** Fills the local tag positions the robot would see: the absolute ones rotated into its frame. */
+  private void observe() {
+    double cos = Math.cos(kRotation);
+    double sin = Math.sin(kRotation);
+    for (int i = 0; i < kAbsoluteX.length; i++) {
+      double dx = kAbsoluteX[i] - kRobotX;
+      double dy = kAbsoluteY[i] - kRobotY;
+      m_localX[i] = cos * dx + sin * dy;
+      m_localY[i] = -sin * dx + cos * dy;
+    }
+  }
+
+  private static RansacPoseEstimator estimator(long budgetMicros) {
+    return new RansacPoseEstimator(budgetMicros, VisionConstants.kRansacInlierThresholdMeters);
+  }
+
+  private void assertPose(CC4HTriangulationImplementation.CC4HTriangulationResult expected) {
+    assertTrue(expected.valid);
+    assertTrue(m_result.valid);
+    assertEquals(expected.x, m_result.x, kEpsilon);
+    assertEquals(expected.y, m_result.y, kEpsilon);
+    assertEquals(expected.theta, m_result.theta, kEpsilon);
+  }
+
+  @Test
+  void corruptedTagIsRejected() {
+    observe();
+    // A misdetection: tag 2 seen a meter off
+    m_localX[2] += 1.0;
+
+    RansacPoseEstimator ransac = estimator(kBudgetMicros);
+    ransac.estimate(kAbsoluteX, kAbsoluteY, m_localX, m_localY, kUnambiguous, 4, m_result);
+
+    assertEquals(3, m_result.tagCount);
+    assertTrue(ransac.isInlier(0));
+    assertTrue(ransac.isInlier(1));
+    assertFalse(ransac.isInlier(2));
+    assertTrue(ransac.isInlier(3));
+    // The pose of the three good tags alone
+    double[] absoluteX = {kAbsoluteX[0], kAbsoluteX[1], kAbsoluteX[3]};
+    double[] absoluteY = {kAbsoluteY[0], kAbsoluteY[1], kAbsoluteY[3]};
+    double[] localX = {m_localX[0], m_localX[1], m_localX[3]};
+    double[] localY = {m_localY[0], m_localY[1], m_localY[3]};
+    CC4HTriangulationImplementation.solveLeastSquares(absoluteX, absoluteY, localX, localY, 3, m_expected);
+    assertPose(m_expected);
+  }
+
+  @Test
+  void allInliersMatchLeastSquares() {
+    observe();
+    // Small enough noise that every tag stays an inlier
+    m_localX[1] += 0.02;
+    m_localY[4] -= 0.03;
+
+    estimator(kBudgetMicros)
+        .estimate(kAbsoluteX, kAbsoluteY, m_localX, m_localY, kUnambiguous, kAbsoluteX.length, m_result);
+
+    assertEquals(kAbsoluteX.length, m_result.tagCount);
+    CC4HTriangulationImplementation.solveLeastSquares(
+        kAbsoluteX, kAbsoluteY, m_localX, m_localY, kAbsoluteX.length, m_expected);
+    assertPose(m_expected);
+  }
+
+  @Test
+  void stopsAtAHypothesisThatExplainsEveryTag() {
+    observe();
+    RansacPoseEstimator ransac = estimator(kBudgetMicros);
+
+    ransac.estimate(kAbsoluteX, kAbsoluteY, m_localX, m_localY, kUnambiguous, kAbsoluteX.length, m_result);
+
+    assertEquals(1, ransac.getIterations());
+    assertFalse(ransac.wasOutOfTime());
+  }
+
+  @Test
+  void stopsOnceConfidentWithoutTryingEveryPair() {
+    observe();
+    m_localY[5] += 1.0;
+    RansacPoseEstimator ransac = estimator(kBudgetMicros);
+
+    ransac.estimate(kAbsoluteX, kAbsoluteY, m_localX, m_localY, kUnambiguous, kAbsoluteX.length, m_result);
+
+    int pairs = kAbsoluteX.length * (kAbsoluteX.length - 1) / 2;
+    assertTrue(ransac.getIterations() < pairs);
+    assertFalse(ransac.wasOutOfTime());
+    assertEquals(kAbsoluteX.length - 1, m_result.tagCount);
+  }
+
+  @Test
+  void stopsWhenTheBudgetRunsOut() {
+    observe();
+    // A budget that is already spent when sampling starts
+    RansacPoseEstimator ransac = estimator(-1);
+
+    ransac.estimate(kAbsoluteX, kAbsoluteY, m_localX, m_localY, kUnambiguous, kAbsoluteX.length, m_result);
+
+    assertTrue(ransac.wasOutOfTime());
+    assertEquals(0, ransac.getIterations());
+    assertFalse(m_result.valid);
+  }
+}
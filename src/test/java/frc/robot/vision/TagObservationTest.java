@@ -0,0 +1,79 @@
+package frc.robot.vision;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import edu.wpi.first.math.geometry.Rotation3d;
+import edu.wpi.first.math.geometry.Transform3d;
+import edu.wpi.first.math.geometry.Translation3d;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.photonvision.targeting.PhotonTrackedTarget;
+import org.photonvision.targeting.TargetCorner;
+
+/** Pins the units and signs TagObservation hands to the solvers. */
+class TagObservationTest {
+  private static final double kEpsilon = 1e-9;
+  private static final List<TargetCorner> kCorners =
+      List.of(new TargetCorner(0, 0), new TargetCorner(1, 0), new TargetCorner(1, 1), new TargetCorner(0, 1));
+
+  private static PhotonTrackedTarget target(double yawDegrees, double forward, double left, double up) {
+    Transform3d cameraToTarget = new Transform3d(new Translation3d(forward, left, up), new Rotation3d(0, 0, 0.25));
+    return new PhotonTrackedTarget(
+        yawDegrees, 0.0, 1.0, 0.0, 7, cameraToTarget, cameraToTarget, 0.1, kCorners, kCorners);
+  }
+
+  @Test
+  void bearingIsPositiveToTheRight() {
+    TagObservation observation = new TagObservation();
+
+    // WPILib's camera frame has y to the left, so a tag to the right has a negative y
+    observation.set(target(0.0, 2.0, -2.0, 0.0));
+    assertEquals(Math.sin(Math.PI / 4), observation.sinBearing, kEpsilon);
+    assertEquals(Math.cos(Math.PI / 4), observation.cosBearing, kEpsilon);
+    assertEquals(2.0, observation.getRight(), kEpsilon);
+    assertEquals(2.0, observation.getForward(), kEpsilon);
+
+    observation.set(target(0.0, 2.0, 2.0, 0.0));
+    assertEquals(-Math.sin(Math.PI / 4), observation.sinBearing, kEpsilon);
+    assertEquals(-2.0, observation.getRight(), kEpsilon);
+  }
+
+  @Test
+  void bearingMatchesPhotonYawOfTheSameTarget() {
+    // A tag 30 degrees to the right, which PhotonVision reports as a yaw of +30
+    double forward = 3.0;
+    double right = forward * Math.tan(Math.toRadians(30.0));
+    TagObservation observation = new TagObservation();
+    observation.set(target(30.0, forward, -right, 0.0));
+    assertEquals(Math.sin(Math.toRadians(30.0)), observation.sinBearing, kEpsilon);
+    assertEquals(Math.cos(Math.toRadians(30.0)), observation.cosBearing, kEpsilon);
+  }
+
+  @Test
+  void rangeIsPlanarAndIgnoresHeight() {
+    TagObservation observation = new TagObservation();
+    observation.set(target(0.0, 3.0, -4.0, 1.5));
+    assertEquals(5.0, observation.range, kEpsilon);
+    assertEquals(0.8, observation.sinBearing, kEpsilon);
+    assertEquals(0.6, observation.cosBearing, kEpsilon);
+  }
+
+  @Test
+  void targetMetadataIsCopied() {
+    TagObservation observation = new TagObservation();
+    observation.set(target(0.0, 1.0, 0.0, 0.0));
+    assertEquals(7, observation.id);
+    assertEquals(0.1, observation.ambiguity, kEpsilon);
+    assertEquals(1.0, observation.area, kEpsilon);
+    assertEquals(0.25, observation.tagYaw, kEpsilon);
+  }
+
+  @Test
+  void zeroRangeLooksStraightAhead() {
+    TagObservation observation = new TagObservation();
+    observation.set(0.0, 0.0);
+    assertEquals(0.0, observation.range, kEpsilon);
+    assertEquals(0.0, observation.sinBearing, kEpsilon);
+    assertEquals(1.0, observation.cosBearing, kEpsilon);
+  }
+}